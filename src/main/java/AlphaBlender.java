@@ -0,0 +1,297 @@
+package main.java;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.ComponentSampleModel;
+import java.util.Random;
+
+/**
+ * 透明度合成类
+ * 直接在像素数组上把预乘透明度的水印图章以SRC_OVER方式合成到目标图片，
+ * 支持 INT_RGB、INT_ARGB 和 3BYTE_BGR 三种常见格式。
+ * 舍入方式与Java2D软件合成循环一致，首次使用时与Graphics2D的结果逐像素比对，
+ * 不一致时自动退回Graphics2D
+ */
+public final class AlphaBlender {
+    // 与Java2D相同的除法表，div8table[b][a] = a * 255 / b（四舍五入）
+    private static final int[][] DIV8 = new int[256][256];
+
+    static {
+        for (int i = 1; i < 256; i++) {
+            int inc = (int) ((0xff000000L + i / 2) / i);
+            int val = 1 << 23;
+            for (int j = 0; j < i; j++) {
+                DIV8[i][j] = val >>> 24;
+                val += inc;
+            }
+            for (int j = i; j < 256; j++) {
+                DIV8[i][j] = 255;
+            }
+        }
+    }
+
+    private static volatile Boolean verified;
+
+    private AlphaBlender() {
+    }
+
+    /**
+     * 判断目标图片格式是否可以直接合成
+     * @param target 目标图片
+     * @return 支持时返回true
+     */
+    public static boolean supports(BufferedImage target) {
+        if (!isSupportedType(target) || !isPacked(target)) {
+            return false;
+        }
+        Boolean result = verified;
+        if (result == null) {
+            result = verify();
+            verified = result;
+            if (!result) {
+                System.err.println("像素合成结果与Graphics2D不一致，改用Graphics2D合成");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将图章合成到目标图片，超出目标范围的部分被裁剪
+     * @param target 目标图片
+     * @param stamp 预乘透明度的图章（TYPE_INT_ARGB_PRE）
+     * @param x 图章左上角x
+     * @param y 图章左上角y
+     */
+    public static void blend(BufferedImage target, BufferedImage stamp, int x, int y) {
+        int width = target.getWidth();
+        int height = target.getHeight();
+        int[] src = ((DataBufferInt) stamp.getRaster().getDataBuffer()).getData();
+        int srcStride = stamp.getWidth();
+
+        int x0 = Math.max(0, x);
+        int y0 = Math.max(0, y);
+        int x1 = Math.min(width, x + stamp.getWidth());
+        int y1 = Math.min(height, y + stamp.getHeight());
+        for (int row = y0; row < y1; row++) {
+            blendRow(target, src, (row - y) * srcStride + (x0 - x), row, x0, x1 - x0);
+        }
+    }
+
+    /**
+     * 将图案单元平铺合成到整张目标图片
+     * @param target 目标图片
+     * @param cell 预乘透明度的图案单元（TYPE_INT_ARGB_PRE）
+     * @param originX 平铺起点x
+     * @param originY 平铺起点y
+     */
+    public static void blendTiled(BufferedImage target, BufferedImage cell, int originX, int originY) {
+        int width = target.getWidth();
+        int height = target.getHeight();
+        int cellWidth = cell.getWidth();
+        int cellHeight = cell.getHeight();
+        int[] src = ((DataBufferInt) cell.getRaster().getDataBuffer()).getData();
+
+        for (int row = 0; row < height; row++) {
+            int cellRow = Math.floorMod(row - originY, cellHeight) * cellWidth;
+            int col = 0;
+            while (col < width) {
+                // 每段合成到图案单元的右边界为止
+                int cellCol = Math.floorMod(col - originX, cellWidth);
+                int length = Math.min(cellWidth - cellCol, width - col);
+                blendRow(target, src, cellRow + cellCol, row, col, length);
+                col += length;
+            }
+        }
+    }
+
+    /**
+     * 合成一行中连续的像素
+     */
+    private static void blendRow(BufferedImage target, int[] src, int srcPos, int row, int col, int length) {
+        switch (target.getType()) {
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] dst = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+                blendIntRgb(src, srcPos, dst, row * scanline(target) + col, length);
+                break;
+            }
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] dst = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+                blendIntArgb(src, srcPos, dst, row * scanline(target) + col, length);
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] dst = ((DataBufferByte) target.getRaster().getDataBuffer()).getData();
+                blend3ByteBgr(src, srcPos, dst, row * scanline(target) + col * 3, length);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("不支持的图片类型: " + target.getType());
+        }
+    }
+
+    /**
+     * 合成到不透明的INT_RGB像素：res = src + (255 - srcA) * dst / 255
+     */
+    private static void blendIntRgb(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; i++) {
+            int s = src[srcPos + i];
+            int sa = s >>> 24;
+            if (sa == 0) {
+                continue;
+            }
+            if (sa == 0xff) {
+                dst[dstPos + i] = s & 0xffffff;
+                continue;
+            }
+            int d = dst[dstPos + i];
+            int f = 0xff - sa;
+            int r = ((s >> 16) & 0xff) + mul8(f, (d >> 16) & 0xff);
+            int g = ((s >> 8) & 0xff) + mul8(f, (d >> 8) & 0xff);
+            int b = (s & 0xff) + mul8(f, d & 0xff);
+            dst[dstPos + i] = (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * 合成到非预乘的INT_ARGB像素，结果需要除以合成后的透明度
+     */
+    private static void blendIntArgb(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; i++) {
+            int s = src[srcPos + i];
+            int sa = s >>> 24;
+            if (sa == 0) {
+                continue;
+            }
+            if (sa == 0xff) {
+                dst[dstPos + i] = s;
+                continue;
+            }
+            int d = dst[dstPos + i];
+            int dstF = mul8(0xff - sa, d >>> 24);
+            int a = sa + dstF;
+            int r = (s >> 16) & 0xff;
+            int g = (s >> 8) & 0xff;
+            int b = s & 0xff;
+            if (dstF != 0) {
+                int dr = (d >> 16) & 0xff;
+                int dg = (d >> 8) & 0xff;
+                int db = d & 0xff;
+                if (dstF < 0xff) {
+                    dr = mul8(dstF, dr);
+                    dg = mul8(dstF, dg);
+                    db = mul8(dstF, db);
+                }
+                r += dr;
+                g += dg;
+                b += db;
+            }
+            if (a < 0xff) {
+                int[] div = DIV8[a];
+                r = div[r];
+                g = div[g];
+                b = div[b];
+            }
+            dst[dstPos + i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * 合成到不透明的3BYTE_BGR像素
+     */
+    private static void blend3ByteBgr(int[] src, int srcPos, byte[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; i++, dstPos += 3) {
+            int s = src[srcPos + i];
+            int sa = s >>> 24;
+            if (sa == 0) {
+                continue;
+            }
+            int f = 0xff - sa;
+            dst[dstPos] = (byte) ((s & 0xff) + mul8(f, dst[dstPos] & 0xff));
+            dst[dstPos + 1] = (byte) (((s >> 8) & 0xff) + mul8(f, dst[dstPos + 1] & 0xff));
+            dst[dstPos + 2] = (byte) (((s >> 16) & 0xff) + mul8(f, dst[dstPos + 2] & 0xff));
+        }
+    }
+
+    /**
+     * 与Java2D的mul8table相同的乘法：a * b / 255（四舍五入）
+     */
+    private static int mul8(int a, int b) {
+        return (a * b * 0x10101 + 0x800000) >>> 24;
+    }
+
+    private static boolean isSupportedType(BufferedImage image) {
+        int type = image.getType();
+        return type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_INT_ARGB
+                || type == BufferedImage.TYPE_3BYTE_BGR;
+    }
+
+    /**
+     * 子图片等共享数据缓冲区的栅格不能按整图偏移直接寻址
+     */
+    private static boolean isPacked(BufferedImage image) {
+        if (image.getRaster().getSampleModelTranslateX() != 0
+                || image.getRaster().getSampleModelTranslateY() != 0
+                || image.getRaster().getDataBuffer().getNumBanks() != 1
+                || image.getRaster().getDataBuffer().getOffset() != 0) {
+            return false;
+        }
+        return scanline(image) == (image.getType() == BufferedImage.TYPE_3BYTE_BGR
+                ? image.getWidth() * 3 : image.getWidth());
+    }
+
+    private static int scanline(BufferedImage image) {
+        if (image.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            return ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+        }
+        return ((ComponentSampleModel) image.getSampleModel()).getScanlineStride();
+    }
+
+    /**
+     * 用随机像素分别通过本类和Graphics2D合成，逐像素比对结果
+     * @return 所有支持的格式结果一致时返回true
+     */
+    private static boolean verify() {
+        Random random = new Random(42);
+        BufferedImage stamp = new BufferedImage(48, 40, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] stampPixels = ((DataBufferInt) stamp.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < stampPixels.length; i++) {
+            int a = i % 7 == 0 ? 0 : i % 7 == 1 ? 0xff : random.nextInt(256);
+            // 预乘格式要求颜色分量不大于透明度
+            int r = a == 0 ? 0 : random.nextInt(a + 1);
+            int g = a == 0 ? 0 : random.nextInt(a + 1);
+            int b = a == 0 ? 0 : random.nextInt(a + 1);
+            stampPixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+
+        int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR};
+        for (int type : types) {
+            BufferedImage expected = new BufferedImage(64, 64, type);
+            for (int py = 0; py < 64; py++) {
+                for (int px = 0; px < 64; px++) {
+                    int alpha = (px + py) % 5 == 0 ? 0 : (px + py) % 5 == 1 ? 0xff : random.nextInt(256);
+                    expected.setRGB(px, py, (alpha << 24) | random.nextInt(0x1000000));
+                }
+            }
+            BufferedImage actual = new BufferedImage(64, 64, type);
+            actual.setData(expected.getRaster());
+
+            Graphics2D g2d = expected.createGraphics();
+            g2d.drawImage(stamp, 20, -5, null);
+            g2d.dispose();
+            blend(actual, stamp, 20, -5);
+
+            for (int py = 0; py < 64; py++) {
+                for (int px = 0; px < 64; px++) {
+                    if (expected.getRGB(px, py) != actual.getRGB(px, py)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
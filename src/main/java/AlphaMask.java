@@ -0,0 +1,162 @@
+package main.java;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * 透明度遮罩类
+ * 把形状渲染为0-255的覆盖率数组，做可分离的模糊后按颜色着色，用于生成阴影和外发光。
+ * 模糊为三次盒式模糊，水平和垂直分开进行，每次的耗时与半径无关，结果接近高斯模糊
+ */
+public final class AlphaMask {
+    // 盒式模糊的次数，三次即可很好地近似高斯模糊
+    private static final int BOX_PASSES = 3;
+
+    private AlphaMask() {
+    }
+
+    /**
+     * 渲染形状的覆盖率
+     * @param width 遮罩宽度
+     * @param height 遮罩高度
+     * @param transform 形状坐标到遮罩像素坐标的变换
+     * @param shapes 形状，全部填充到同一遮罩中
+     * @return 行优先的覆盖率数组，0-255
+     */
+    public static int[] render(int width, int height, AffineTransform transform, Shape... shapes) {
+        BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = mask.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.setTransform(transform);
+        g2d.setColor(Color.WHITE);
+        for (Shape shape : shapes) {
+            g2d.fill(shape);
+        }
+        g2d.dispose();
+
+        int[] pixels = ((DataBufferInt) mask.getRaster().getDataBuffer()).getData();
+        int[] alpha = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            alpha[i] = pixels[i] >>> 24;
+        }
+        return alpha;
+    }
+
+    /**
+     * 模糊后的影响范围，形状周围需要留出这么多像素
+     * @param radius 模糊半径
+     * @return 像素数
+     */
+    public static int extent(int radius) {
+        return radius <= 0 ? 0 : boxRadius(radius) * BOX_PASSES + 1;
+    }
+
+    /**
+     * 原地模糊覆盖率数组，效果约等于标准差为半径一半的高斯模糊
+     * @param alpha 覆盖率数组
+     * @param width 宽度
+     * @param height 高度
+     * @param radius 模糊半径，不大于0时不处理
+     */
+    public static void blur(int[] alpha, int width, int height, int radius) {
+        if (radius <= 0) {
+            return;
+        }
+        int box = boxRadius(radius);
+        int[] temp = new int[alpha.length];
+        for (int pass = 0; pass < BOX_PASSES; pass++) {
+            for (int y = 0; y < height; y++) {
+                boxBlur(alpha, temp, y * width, 1, width, box);
+            }
+            System.arraycopy(temp, 0, alpha, 0, alpha.length);
+        }
+        for (int pass = 0; pass < BOX_PASSES; pass++) {
+            for (int x = 0; x < width; x++) {
+                boxBlur(alpha, temp, x, width, height, box);
+            }
+            System.arraycopy(temp, 0, alpha, 0, alpha.length);
+        }
+    }
+
+    /**
+     * 按覆盖率给颜色着色
+     * @param alpha 覆盖率数组
+     * @param width 宽度
+     * @param height 高度
+     * @param color 颜色，其透明度同样生效
+     * @param gain 覆盖率放大倍数，外发光用来加强模糊后变淡的边缘
+     * @return 预乘透明度的图层
+     */
+    public static BufferedImage colorize(int[] alpha, int width, int height, Color color, float gain) {
+        BufferedImage layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+        int scale = Math.round(gain * color.getAlpha() * 256 / 255f);
+        int red = color.getRed();
+        int green = color.getGreen();
+        int blue = color.getBlue();
+        for (int i = 0; i < pixels.length; i++) {
+            int a = Math.min(255, (alpha[i] * scale + 128) >> 8);
+            if (a != 0) {
+                pixels[i] = a << 24 | (red * a + 127) / 255 << 16 | (green * a + 127) / 255 << 8 | (blue * a + 127) / 255;
+            }
+        }
+        return layer;
+    }
+
+    /**
+     * 按透明度缩放预乘透明度图片的全部像素
+     * @param image TYPE_INT_ARGB_PRE 图片
+     * @param opacity 透明度 0-1
+     */
+    public static void applyOpacity(BufferedImage image, float opacity) {
+        int scale = Math.round(Math.max(0, Math.min(1, opacity)) * 256);
+        if (scale >= 256) {
+            return;
+        }
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            int p = pixels[i];
+            if (p != 0) {
+                pixels[i] = ((p >>> 24) * scale + 128) >> 8 << 24
+                        | ((p >> 16 & 0xFF) * scale + 128) >> 8 << 16
+                        | ((p >> 8 & 0xFF) * scale + 128) >> 8 << 8
+                        | ((p & 0xFF) * scale + 128) >> 8;
+            }
+        }
+    }
+
+    /**
+     * 三次盒式模糊近似标准差为 radius/2 的高斯模糊时，单次盒子的半径
+     */
+    private static int boxRadius(int radius) {
+        return Math.max(1, Math.round(radius / 2f));
+    }
+
+    /**
+     * 对一行或一列做盒式模糊，窗口滑动时只加入和移出一个像素，范围外按0处理
+     * @param offset 起始下标
+     * @param stride 相邻像素的下标间隔
+     * @param length 像素数
+     */
+    private static void boxBlur(int[] source, int[] target, int offset, int stride, int length, int box) {
+        int size = box * 2 + 1;
+        int sum = 0;
+        for (int i = 0; i <= box && i < length; i++) {
+            sum += source[offset + i * stride];
+        }
+        for (int i = 0; i < length; i++) {
+            target[offset + i * stride] = (sum + size / 2) / size;
+            int add = i + box + 1;
+            if (add < length) {
+                sum += source[offset + add * stride];
+            }
+            int remove = i - box;
+            if (remove >= 0) {
+                sum -= source[offset + remove * stride];
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package main.java;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 批量导出类
+ * 负责将一组图片添加水印后导出到指定目录，
+ * 借助导出清单跳过源文件和设置均未变化的图片
+ */
+public class BatchExporter {
+    // 同时在途（已读取未写出）的图片数量上限
+    private static final int MAX_IN_FLIGHT = Math.max(32, Runtime.getRuntime().availableProcessors() * 4);
+
+    private final ImageProcessor imageProcessor;
+    private final WatermarkManager watermarkManager;
+    private ExportStats stats = new ExportStats();
+    private MemoryBudget memoryBudget = null;
+
+    /**
+     * 导出结果统计
+     */
+    public static class Result {
+        public int exported;
+        public int skipped;
+        public int failed;
+    }
+
+    public BatchExporter(ImageProcessor imageProcessor, WatermarkManager watermarkManager) {
+        this.imageProcessor = imageProcessor;
+        this.watermarkManager = watermarkManager;
+    }
+
+    /**
+     * 导出图片
+     * 导出前在输出目录创建任务日志，进程中途退出后可以用 {@link ExportJob} 恢复
+     * @param images 源图片列表
+     * @param outputDir 输出目录
+     * @return 导出结果统计
+     */
+    public Result export(List<File> images, File outputDir) {
+        ExportJob job;
+        try {
+            job = ExportJob.create(outputDir, images, watermarkManager.getSettings(), imageProcessor.getOutputOptions());
+        } catch (IOException e) {
+            e.printStackTrace();
+            Result result = new Result();
+            result.failed = images.size();
+            return result;
+        }
+        return export(job);
+    }
+
+    /**
+     * 执行或恢复导出任务
+     * 每张图片的读取和写入在虚拟线程中进行，解码、加水印和编码在计算线程池中进行，
+     * 同时在途的图片数量受限，避免一次读入整个批次
+     * @param job 导出任务，应使用 {@link ExportJob#createExporter()} 创建的导出器执行
+     * @return 导出结果统计
+     */
+    public Result export(ExportJob job) {
+        Result result = new Result();
+        File outputDir = job.getOutputDir();
+        ExportManifest manifest = new ExportManifest(outputDir);
+        String fingerprint = currentFingerprint();
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        List<File> completed = job.getCompleted();
+        List<File> pending = job.getPending();
+        ExportStats stats = this.stats;
+        stats.start(completed.size() + pending.size());
+
+        // 上次运行已完成的文件可能还没来得及写入清单
+        for (File image : completed) {
+            manifest.record(image, fingerprint, job.outputFileFor(image));
+            result.skipped++;
+            stats.markSkipped();
+        }
+
+        for (File image : pending) {
+            File outputFile = job.outputFileFor(image);
+            if (manifest.isUpToDate(image, fingerprint, outputFile)) {
+                result.skipped++;
+                stats.markSkipped();
+                continue;
+            }
+
+            inFlight.acquireUninterruptibly();
+            ExportStats.Task tracker = stats.newTask();
+            CompletableFuture<Void> task = CompletableFuture
+                    .supplyAsync(() -> {
+                        tracker.moveTo(ExportStats.Phase.READING);
+                        byte[] data = read(image);
+                        tracker.moveTo(ExportStats.Phase.WAIT_CPU);
+                        return data;
+                    }, PipelineExecutors.io())
+                    .thenApplyAsync(data -> {
+                        byte[] encoded = render(data, image, tracker);
+                        tracker.moveTo(ExportStats.Phase.WAIT_WRITE);
+                        return encoded;
+                    }, PipelineExecutors.cpu())
+                    .thenAcceptAsync(encoded -> {
+                        tracker.moveTo(ExportStats.Phase.WRITING);
+                        write(encoded, outputFile);
+                        job.markDone(image, encoded.length, ExportJob.checksum(encoded));
+                    }, PipelineExecutors.io())
+                    .handle((ignored, error) -> {
+                        tracker.finish();
+                        synchronized (result) {
+                            if (error == null) {
+                                manifest.record(image, fingerprint, outputFile);
+                                result.exported++;
+                                stats.markExported();
+                            } else {
+                                System.err.println("导出失败: " + image.getPath() + " (" + error.getMessage() + ")");
+                                job.markFailed(image);
+                                result.failed++;
+                                stats.markFailed();
+                            }
+                        }
+                        inFlight.release();
+                        return null;
+                    });
+            tasks.add(task);
+        }
+
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        manifest.save();
+        job.finish();
+        stats.finish();
+        return result;
+    }
+
+    private byte[] read(File image) {
+        long start = System.nanoTime();
+        try {
+            byte[] data = imageProcessor.readBytes(image);
+            stats.addBytesRead(data.length);
+            return data;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            stats.addTime(ExportStats.Stage.READ, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 解码、加水印并编码
+     * 解码前按文件头中的尺寸向内存预算申请许可，编码完成后归还，大图同时处理的数量因此受限
+     * @param tracker 流水线位置跟踪，为null时不跟踪
+     */
+    private byte[] render(byte[] data, File image, ExportStats.Task tracker) {
+        if (tracker != null) {
+            tracker.moveTo(ExportStats.Phase.WAIT_MEMORY);
+        }
+        MemoryBudget budget = memoryBudget != null ? memoryBudget : MemoryBudget.getShared();
+        MemoryBudget.Permit permit = budget.acquire(imageProcessor.estimateOutputMemory(data));
+        try {
+            if (tracker != null) {
+                tracker.moveTo(ExportStats.Phase.RENDERING);
+            }
+            long start = System.nanoTime();
+            // 解码结果可能来自共用缓存，加水印时会先复制
+            BufferedImage source = imageProcessor.decodeForOutput(image, data);
+            if (source == null) {
+                throw new UncheckedIOException(new IOException("无法解码图片: " + image.getName()));
+            }
+            // 方向和元数据段都取自已读入内存的文件头
+            ImageMetadata metadata = ImageMetadata.read(data);
+            long decoded = System.nanoTime();
+            stats.addTime(ExportStats.Stage.DECODE, decoded - start);
+            BufferedImage watermarked = watermarkManager.applyWatermark(
+                    source, imageProcessor.keepsAlpha(), metadata.getOrientation());
+            long stamped = System.nanoTime();
+            stats.addTime(ExportStats.Stage.WATERMARK, stamped - decoded);
+            try {
+                return imageProcessor.encodeImage(watermarked, metadata);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                stats.addTime(ExportStats.Stage.ENCODE, System.nanoTime() - stamped);
+            }
+        } finally {
+            permit.close();
+        }
+    }
+
+    private void write(byte[] encoded, File outputFile) {
+        long start = System.nanoTime();
+        try {
+            imageProcessor.writeBytes(encoded, outputFile);
+            stats.addBytesWritten(encoded.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            stats.addTime(ExportStats.Stage.WRITE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 导出单张图片，不检查导出清单
+     * @param image 源图片
+     * @param outputFile 输出文件
+     * @return 导出成功返回true
+     */
+    public boolean exportFile(File image, File outputFile) {
+        try {
+            write(render(read(image), image, null), outputFile);
+            return true;
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 获取导出统计，导出过程中可以从其他线程读取
+     * @return 导出统计
+     */
+    public ExportStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 设置导出统计，应在开始导出前调用
+     * @param stats 导出统计
+     */
+    public void setStats(ExportStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * 设置解码内存预算
+     * @param memoryBudget 内存预算，为null时使用进程内共用的预算
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * 计算当前水印设置与输出规格的组合指纹
+     * @return 组合指纹
+     */
+    public String currentFingerprint() {
+        return watermarkManager.getSettings().fingerprint()
+                + "-" + Integer.toHexString(imageProcessor.getOutputSpec().hashCode());
+    }
+}
@@ -0,0 +1,108 @@
+package main.java;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 颜色往返检查
+ * 生成嵌入线性RGB配置文件（非sRGB）的JPEG，分别经原尺寸解码和缩小解码两条路径导出为JPEG，
+ * 比较源图与输出按各自配置文件解释后的颜色，偏差应在JPEG的有损误差以内。
+ * 线性RGB在暗部的量化误差会被放大，只比较中间调和高光
+ */
+public class ColorRoundTripCheck {
+    private static final int WIDTH = 1600;
+    private static final int HEIGHT = 1200;
+    // 允许的最大通道偏差
+    private static final int TOLERANCE = 8;
+    // 暗于该值的像素不比较
+    private static final int SHADOW_LIMIT = 64;
+
+    /**
+     * 命令行入口
+     * 用法: ColorRoundTripCheck
+     * 偏差超出范围时以状态码1退出
+     */
+    public static void main(String[] args) throws IOException {
+        byte[] source = createTaggedJpeg();
+        BufferedImage reference = ImageIO.read(new ByteArrayInputStream(source));
+        boolean passed = true;
+        // 0为原尺寸路径，400会在解码阶段缩小到1/4
+        for (int maxDimension : new int[]{0, WIDTH / 4}) {
+            ImageProcessor processor = new ImageProcessor();
+            processor.setImageCache(null);
+            processor.setMaxDimension(maxDimension);
+            processor.setOutputFormat("jpeg");
+            WatermarkManager watermarkManager = new WatermarkManager();
+            watermarkManager.getSettings().setText("");
+
+            BufferedImage decoded = processor.decodeForOutput(source);
+            BufferedImage watermarked = watermarkManager.applyWatermark(decoded, false, 1);
+            byte[] output = processor.encodeImage(watermarked, ImageMetadata.read(source));
+            BufferedImage result = ImageIO.read(new ByteArrayInputStream(output));
+
+            int deviation = maxDeviation(reference, result);
+            boolean ok = deviation <= TOLERANCE;
+            passed &= ok;
+            System.out.printf("%s %dx%d 最大偏差 %d%n", ok ? "通过" : "失败",
+                    result.getWidth(), result.getHeight(), deviation);
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 生成像素为线性RGB数值、嵌入线性RGB配置文件的JPEG
+     */
+    private static byte[] createTaggedJpeg() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, (x * 255 / WIDTH) << 16 | (y * 255 / HEIGHT) << 8 | 110);
+            }
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", encoded);
+        byte[] jpeg = encoded.toByteArray();
+
+        // APP2段插在编码器写出的JFIF段之后
+        byte[] profile = ICC_Profile.getInstance(ColorSpace.CS_LINEAR_RGB).getData();
+        int insertAt = 4 + (((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF));
+        int length = 2 + 12 + 2 + profile.length;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(jpeg, 0, insertAt);
+        output.write(new byte[]{(byte) 0xFF, (byte) 0xE2, (byte) (length >> 8), (byte) length});
+        output.write("ICC_PROFILE\0".getBytes(StandardCharsets.ISO_8859_1));
+        output.write(new byte[]{1, 1});
+        output.write(profile);
+        output.write(jpeg, insertAt, jpeg.length - insertAt);
+        return output.toByteArray();
+    }
+
+    /**
+     * 比较缩小后的结果与源图对应位置的颜色，跳过边缘和暗部
+     */
+    private static int maxDeviation(BufferedImage reference, BufferedImage result) {
+        int scale = reference.getWidth() / result.getWidth();
+        int max = 0;
+        for (int y = 2; y < result.getHeight() - 2; y += 3) {
+            for (int x = 2; x < result.getWidth() - 2; x += 3) {
+                int expected = reference.getRGB(x * scale + scale / 2, y * scale + scale / 2);
+                if ((expected >> 16 & 0xFF) < SHADOW_LIMIT || (expected >> 8 & 0xFF) < SHADOW_LIMIT) {
+                    continue;
+                }
+                int actual = result.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    max = Math.max(max, Math.abs((expected >> shift & 0xFF) - (actual >> shift & 0xFF)));
+                }
+            }
+        }
+        return max;
+    }
+}
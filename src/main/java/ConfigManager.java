@@ -1,8 +1,8 @@
 package main.java;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Map;
 
@@ -12,10 +12,14 @@ import java.util.Map;
  */
 public class ConfigManager {
     private static final String CONFIG_DIR = System.getProperty("user.home") + File.separator + ".photowatermark";
-    private static final String TEMPLATES_FILE = CONFIG_DIR + File.separator + "templates.dat";
-    private static final String LAST_SETTINGS_FILE = CONFIG_DIR + File.separator + "last_settings.dat";
+    private static final String TEMPLATES_FILE = CONFIG_DIR + File.separator + "templates.db";
+    private static final String LAST_SETTINGS_FILE = CONFIG_DIR + File.separator + "last_settings.bin";
     
-    private Map<String, WatermarkSettings> templates = new HashMap<>();
+    // 旧版本使用Java序列化保存的文件，首次启动时迁移
+    private static final String LEGACY_TEMPLATES_FILE = CONFIG_DIR + File.separator + "templates.dat";
+    private static final String LEGACY_LAST_SETTINGS_FILE = CONFIG_DIR + File.separator + "last_settings.dat";
+    
+    private TemplateStore templates;
     
     public ConfigManager() {
         // 确保配置目录存在
@@ -24,18 +28,22 @@ public class ConfigManager {
             configDir.mkdirs();
         }
         
-        // 加载模板
-        loadTemplates();
+        // 打开模板存储，只建立索引，模板内容按需加载
+        boolean migrate = !new File(TEMPLATES_FILE).exists();
+        templates = new TemplateStore(new File(TEMPLATES_FILE));
+        if (migrate) {
+            migrateLegacyTemplates();
+        }
     }
     
     /**
      * 保存水印模板
      * @param name 模板名称
      * @param settings 水印设置
+     * @return 保存成功返回true
      */
-    public void saveTemplate(String name, WatermarkSettings settings) {
-        templates.put(name, settings);
-        saveTemplates();
+    public boolean saveTemplate(String name, WatermarkSettings settings) {
+        return templates.put(name, settings);
     }
     
     /**
@@ -53,7 +61,6 @@ public class ConfigManager {
      */
     public void deleteTemplate(String name) {
         templates.remove(name);
-        saveTemplates();
     }
     
     /**
@@ -61,17 +68,27 @@ public class ConfigManager {
      * @return 模板名称列表
      */
     public List<String> getTemplateNames() {
-        return new ArrayList<>(templates.keySet());
+        return templates.names();
     }
     
     /**
      * 保存最后使用的设置
+     * 先写入临时文件再替换，避免中途崩溃损坏文件
      * @param settings 水印设置
      */
     public void saveLastSettings(WatermarkSettings settings) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(LAST_SETTINGS_FILE))) {
-            oos.writeObject(settings);
+        File file = new File(LAST_SETTINGS_FILE);
+        File tempFile = new File(LAST_SETTINGS_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            fos.write(TemplateStore.encode(settings));
+            fos.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -84,45 +101,53 @@ public class ConfigManager {
     public WatermarkSettings loadLastSettings() {
         File file = new File(LAST_SETTINGS_FILE);
         if (!file.exists()) {
-            return null;
+            return loadLegacyLastSettings();
         }
         
-        try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(LAST_SETTINGS_FILE))) {
-            return (WatermarkSettings) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+        try {
+            return TemplateStore.decode(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
     
     /**
-     * 加载所有模板
+     * 读取旧版本序列化保存的最后设置
+     * @return 水印设置，如果没有则返回null
      */
-    private void loadTemplates() {
-        File file = new File(TEMPLATES_FILE);
+    private WatermarkSettings loadLegacyLastSettings() {
+        File file = new File(LEGACY_LAST_SETTINGS_FILE);
         if (!file.exists()) {
-            return;
+            return null;
         }
         
         try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(TEMPLATES_FILE))) {
-            templates = (Map<String, WatermarkSettings>) ois.readObject();
+                new FileInputStream(file))) {
+            return (WatermarkSettings) ois.readObject();
         } catch (IOException | ClassNotFoundException e) {
             e.printStackTrace();
-            templates = new HashMap<>();
+            return null;
         }
     }
     
     /**
-     * 保存所有模板
+     * 将旧版本序列化保存的模板迁移到新存储，迁移后旧文件改名备份
      */
-    private void saveTemplates() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(TEMPLATES_FILE))) {
-            oos.writeObject(templates);
-        } catch (IOException e) {
+    @SuppressWarnings("unchecked")
+    private void migrateLegacyTemplates() {
+        File file = new File(LEGACY_TEMPLATES_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new FileInputStream(file))) {
+            templates.putAll((Map<String, WatermarkSettings>) ois.readObject());
+        } catch (IOException | ClassNotFoundException e) {
             e.printStackTrace();
+            return;
         }
+        file.renameTo(new File(LEGACY_TEMPLATES_FILE + ".bak"));
     }
 }
\ No newline at end of file
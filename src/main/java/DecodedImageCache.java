@@ -0,0 +1,230 @@
+package main.java;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解码图片缓存
+ * 按源文件（路径、修改时间、大小）和解码缩小倍数缓存解码结果，预览和导出共用。
+ * 强引用部分按像素字节数限额，超出时淘汰最久未使用的图片；
+ * 被淘汰的图片转为软引用保留，内存紧张时由垃圾回收器释放。
+ * 缓存中的图片是共享的，使用方只能读取，需要修改时先复制
+ */
+public class DecodedImageCache {
+    private static final DecodedImageCache SHARED = new DecodedImageCache();
+
+    private final long maxBytes;
+    private long currentBytes = 0;
+    // 访问顺序的强引用部分，最久未使用的在最前
+    private final LinkedHashMap<Key, BufferedImage> strong = new LinkedHashMap<>(16, 0.75f, true);
+    // 被淘汰或超出单张上限的图片
+    private final Map<Key, SoftEntry> soft = new HashMap<>();
+    private final ReferenceQueue<BufferedImage> cleared = new ReferenceQueue<>();
+
+    /**
+     * 缓存键，源文件变化后旧的解码结果自然失效
+     */
+    private static final class Key {
+        final String path;
+        final long lastModified;
+        final long length;
+        final int scale;
+
+        Key(File file, int scale) {
+            this.path = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.scale = scale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return lastModified == other.lastModified && length == other.length
+                    && scale == other.scale && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return (path.hashCode() * 31 + Long.hashCode(lastModified)) * 31 + scale;
+        }
+    }
+
+    private static final class SoftEntry extends SoftReference<BufferedImage> {
+        final Key key;
+
+        SoftEntry(Key key, BufferedImage image, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * 获取进程内共用的缓存
+     * @return 共用缓存
+     */
+    public static DecodedImageCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * 使用默认限额：最大堆的1/4，不超过512MB
+     */
+    public DecodedImageCache() {
+        this(Math.min(512L << 20, Runtime.getRuntime().maxMemory() / 4));
+    }
+
+    /**
+     * @param maxBytes 强引用部分的像素字节数上限
+     */
+    public DecodedImageCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * 获取指定倍数的解码结果
+     * @param file 源文件
+     * @param scale 解码缩小倍数
+     * @return 缓存的图片，没有时返回null
+     */
+    public synchronized BufferedImage get(File file, int scale) {
+        return lookup(new Key(file, scale));
+    }
+
+    /**
+     * 获取分辨率不低于指定倍数的解码结果，优先返回最接近的
+     * 适合预览，更大的图片缩放后同样可用
+     * @param file 源文件
+     * @param scale 需要的解码缩小倍数
+     * @return 缓存的图片，没有时返回null
+     */
+    public synchronized BufferedImage getAtLeast(File file, int scale) {
+        for (int candidate = scale; candidate >= 1; candidate /= 2) {
+            BufferedImage image = lookup(new Key(file, candidate));
+            if (image != null) {
+                return image;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 放入解码结果
+     * 单张超过限额一半的图片只以软引用保留，避免一张大图清空整个缓存
+     * @param file 源文件
+     * @param scale 解码缩小倍数
+     * @param image 解码结果，放入后不应再修改
+     */
+    public synchronized void put(File file, int scale, BufferedImage image) {
+        if (image == null) {
+            return;
+        }
+        purgeCleared();
+        Key key = new Key(file, scale);
+        removeKey(key);
+        long size = sizeOf(image);
+        if (size * 2 > maxBytes) {
+            soft.put(key, new SoftEntry(key, image, cleared));
+            return;
+        }
+        strong.put(key, image);
+        currentBytes += size;
+        evict();
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        strong.clear();
+        soft.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * @return 强引用部分占用的字节数
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 估算图片像素占用的字节数
+     */
+    public static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private BufferedImage lookup(Key key) {
+        BufferedImage image = strong.get(key);
+        if (image != null) {
+            return image;
+        }
+        SoftEntry entry = soft.get(key);
+        if (entry == null) {
+            return null;
+        }
+        image = entry.get();
+        if (image == null) {
+            soft.remove(key);
+            return null;
+        }
+        // 软引用中的图片再次被使用，能放下时恢复为强引用
+        long size = sizeOf(image);
+        if (size * 2 <= maxBytes) {
+            soft.remove(key);
+            strong.put(key, image);
+            currentBytes += size;
+            evict();
+        }
+        return image;
+    }
+
+    private void removeKey(Key key) {
+        BufferedImage old = strong.remove(key);
+        if (old != null) {
+            currentBytes -= sizeOf(old);
+        }
+        soft.remove(key);
+    }
+
+    /**
+     * 淘汰最久未使用的图片直到不超过限额，被淘汰的图片转为软引用
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> iterator = strong.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Key, BufferedImage> eldest = iterator.next();
+            iterator.remove();
+            currentBytes -= sizeOf(eldest.getValue());
+            soft.put(eldest.getKey(), new SoftEntry(eldest.getKey(), eldest.getValue(), cleared));
+        }
+    }
+
+    /**
+     * 移除已被垃圾回收器释放的软引用
+     */
+    private void purgeCleared() {
+        Object reference;
+        while ((reference = cleared.poll()) != null) {
+            SoftEntry entry = (SoftEntry) reference;
+            if (soft.get(entry.key) == entry) {
+                soft.remove(entry.key);
+            }
+        }
+    }
+}
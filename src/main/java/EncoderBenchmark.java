@@ -0,0 +1,92 @@
+package main.java;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JPEG编码配置基准测试
+ * 对同一组图片依次用每种编码配置编码，报告每百万像素的编码耗时和输出字节数。
+ * 图片只解码一次并去掉透明通道，先完整预热一轮再计时
+ */
+public class EncoderBenchmark {
+
+    /**
+     * 命令行入口
+     * 用法: EncoderBenchmark &lt;图片目录或文件...&gt; [--quality 0.9] [--runs 3]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法: EncoderBenchmark <图片目录或文件...> [--quality 0.9] [--runs 3]");
+            System.exit(1);
+        }
+        float quality = 0.9f;
+        int runs = 3;
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--quality":
+                    quality = Float.parseFloat(args[++i]);
+                    break;
+                case "--runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    ExportCoordinator.collectImages(new File(args[i]), files);
+            }
+        }
+
+        ImageProcessor processor = new ImageProcessor();
+        List<BufferedImage> images = new ArrayList<>();
+        double megapixels = 0;
+        for (File file : files) {
+            BufferedImage image = processor.loadImage(file);
+            if (image != null) {
+                // PNG、TIFF等输入可能带透明通道，与导出时一样先去掉，JPEG编码器不支持
+                image = ImageProcessor.toOpaque(image);
+                images.add(image);
+                megapixels += image.getWidth() * (double) image.getHeight() / 1_000_000;
+            }
+        }
+        if (images.isEmpty()) {
+            System.err.println("没有可用的图片");
+            System.exit(1);
+        }
+        System.out.printf("%d 张图片，共 %.1f MP，质量 %.2f，每种配置 %d 轮%n", images.size(), megapixels, quality, runs);
+        System.out.printf("%-24s %12s %14s %12s%n", "配置", "ms/MP", "字节/MP", "相对基线");
+
+        long baselineBytes = 0;
+        for (JpegProfile profile : JpegProfile.values()) {
+            encodeAll(images, quality, profile);
+            long start = System.nanoTime();
+            long bytes = 0;
+            for (int run = 0; run < runs; run++) {
+                bytes = encodeAll(images, quality, profile);
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / runs;
+            if (profile == JpegProfile.BASELINE) {
+                baselineBytes = bytes;
+            }
+            System.out.printf("%-24s %12.1f %14.0f %11.1f%%%n", profile.name(), ms / megapixels,
+                    bytes / megapixels, baselineBytes > 0 ? bytes * 100.0 / baselineBytes : 100.0);
+        }
+    }
+
+    /**
+     * 编码全部图片
+     * @return 输出总字节数
+     */
+    private static long encodeAll(List<BufferedImage> images, float quality, JpegProfile profile) throws IOException {
+        long bytes = 0;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (BufferedImage image : images) {
+            output.reset();
+            JpegEncoder.write(image, output, quality, profile);
+            bytes += output.size();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,335 @@
+package main.java;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 分布式导出协调节点
+ * 把待导出文件切分为分片，分发水印设置和输出选项给连接上来的工作节点，
+ * 跟踪进度并重试失败或随节点断开而丢失的分片。
+ * 各节点通过共享存储读写文件，导出清单只由协调节点维护
+ */
+public class ExportCoordinator {
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final WatermarkSettings settings;
+    private final ImageProcessor imageProcessor;
+    private final File outputDir;
+    private final int shardSize;
+
+    private final Deque<Shard> pending = new ArrayDeque<>();
+    private final Map<Integer, Shard> inFlight = new HashMap<>();
+    private final BatchExporter.Result result = new BatchExporter.Result();
+    private ExportManifest manifest;
+    private String fingerprint;
+    private int nextShardId = 0;
+    private int total = 0;
+
+    /**
+     * 分片
+     */
+    private static class Shard {
+        final int id;
+        final List<File> files;
+        final int attempts;
+
+        Shard(int id, List<File> files, int attempts) {
+            this.id = id;
+            this.files = files;
+            this.attempts = attempts;
+        }
+    }
+
+    /**
+     * @param settings 水印设置，创建时复制一份快照
+     * @param imageProcessor 提供输出选项的图片处理器
+     * @param outputDir 共享存储上的输出目录
+     * @param shardSize 每个分片的文件数
+     */
+    public ExportCoordinator(WatermarkSettings settings, ImageProcessor imageProcessor, File outputDir, int shardSize) {
+        this.settings = settings.copy();
+        this.imageProcessor = new ImageProcessor();
+        this.imageProcessor.applyOutputOptions(imageProcessor.getOutputOptions());
+        this.outputDir = outputDir;
+        this.shardSize = Math.max(1, shardSize);
+    }
+
+    /**
+     * 在指定端口等待工作节点连接，直到所有文件处理完成
+     * @param images 源图片列表
+     * @param port 监听端口
+     * @return 导出结果统计
+     * @throws IOException 无法监听端口
+     */
+    public BatchExporter.Result run(List<File> images, int port) throws IOException {
+        WatermarkManager watermarkManager = new WatermarkManager();
+        watermarkManager.applySettings(settings);
+        fingerprint = new BatchExporter(imageProcessor, watermarkManager).currentFingerprint();
+        manifest = new ExportManifest(outputDir);
+
+        List<File> current = new ArrayList<>();
+        synchronized (this) {
+            for (File image : images) {
+                if (manifest.isUpToDate(image, fingerprint, outputFile(image))) {
+                    result.skipped++;
+                    continue;
+                }
+                current.add(image);
+                total++;
+                if (current.size() == shardSize) {
+                    pending.add(new Shard(nextShardId++, current, 1));
+                    current = new ArrayList<>();
+                }
+            }
+            if (!current.isEmpty()) {
+                pending.add(new Shard(nextShardId++, current, 1));
+            }
+        }
+
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("[协调] 监听端口 " + server.getLocalPort() + "，待处理 " + total + " 张，跳过 "
+                    + result.skipped + " 张");
+            Thread acceptor = new Thread(() -> acceptWorkers(server), "export-coordinator-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            synchronized (this) {
+                while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        } finally {
+            manifest.save();
+        }
+        return result;
+    }
+
+    private void acceptWorkers(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread handler = new Thread(() -> serve(socket), "export-coordinator-" + socket.getRemoteSocketAddress());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 与一个工作节点通信，节点断开时把正在处理的分片放回队列
+     */
+    private void serve(Socket socket) {
+        Shard assigned = null;
+        String worker = socket.getRemoteSocketAddress().toString();
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new BufferedWriter(
+                     new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)), true)) {
+            String hello = in.readLine();
+            if (hello == null || !hello.startsWith(ExportProtocol.HELLO)) {
+                return;
+            }
+            String[] helloParts = hello.split(" ");
+            if (helloParts.length > 1) {
+                worker = helloParts[1] + "@" + worker;
+            }
+            System.out.println("[协调] 工作节点已连接: " + worker);
+            out.println(ExportProtocol.SETTINGS + " " + ExportProtocol.encodeSettings(settings));
+            out.println(ExportProtocol.OPTIONS + " " + ExportProtocol.encodeOptions(imageProcessor.getOutputOptions()));
+            out.println(ExportProtocol.OUTPUT + " " + ExportProtocol.encodeText(outputDir.getAbsolutePath()));
+
+            List<File> failed = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(" ");
+                switch (parts[0]) {
+                    case ExportProtocol.NEXT:
+                        assigned = take();
+                        if (assigned != null) {
+                            out.println(ExportProtocol.SHARD + " " + assigned.id + " " + assigned.files.size());
+                            for (File file : assigned.files) {
+                                out.println(ExportProtocol.FILE + " " + ExportProtocol.encodeText(file.getAbsolutePath()));
+                            }
+                            failed.clear();
+                        } else if (isFinished()) {
+                            out.println(ExportProtocol.DONE);
+                            return;
+                        } else {
+                            out.println(ExportProtocol.WAIT + " 500");
+                        }
+                        break;
+                    case ExportProtocol.OK:
+                        if (assigned != null) {
+                            File file = assigned.files.get(Integer.parseInt(parts[1]));
+                            synchronized (this) {
+                                manifest.record(file, fingerprint, outputFile(file));
+                                result.exported++;
+                            }
+                        }
+                        break;
+                    case ExportProtocol.FAIL:
+                        if (assigned != null) {
+                            failed.add(assigned.files.get(Integer.parseInt(parts[1])));
+                        }
+                        break;
+                    case ExportProtocol.END:
+                        if (assigned != null) {
+                            complete(assigned, failed);
+                            assigned = null;
+                        }
+                        break;
+                    default:
+                        System.err.println("[协调] 未知消息: " + line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[协调] 工作节点连接中断: " + worker + " (" + e.getMessage() + ")");
+        } finally {
+            if (assigned != null) {
+                // 已确认成功的文件已记录在清单中，重新排队时会被排除
+                requeue(assigned, assigned.files);
+            }
+        }
+    }
+
+    private synchronized Shard take() {
+        Shard shard = pending.poll();
+        if (shard != null) {
+            inFlight.put(shard.id, shard);
+        }
+        return shard;
+    }
+
+    private synchronized boolean isFinished() {
+        return pending.isEmpty() && inFlight.isEmpty();
+    }
+
+    /**
+     * 分片处理完成，失败的文件组成新分片重试
+     */
+    private synchronized void complete(Shard shard, List<File> failed) {
+        inFlight.remove(shard.id);
+        if (!failed.isEmpty()) {
+            requeue(shard, new ArrayList<>(failed));
+        }
+        int done = result.exported + result.failed;
+        System.out.println("[协调] 进度 " + done + "/" + total);
+        notifyAll();
+    }
+
+    private synchronized void requeue(Shard shard, List<File> files) {
+        inFlight.remove(shard.id);
+        List<File> remaining = new ArrayList<>();
+        for (File file : files) {
+            if (!manifest.isUpToDate(file, fingerprint, outputFile(file))) {
+                remaining.add(file);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            if (shard.attempts < MAX_ATTEMPTS) {
+                pending.add(new Shard(nextShardId++, remaining, shard.attempts + 1));
+            } else {
+                result.failed += remaining.size();
+                for (File file : remaining) {
+                    System.err.println("[协调] 多次重试后仍失败: " + file.getPath());
+                }
+            }
+        }
+        notifyAll();
+    }
+
+    private File outputFile(File image) {
+        return new File(outputDir, imageProcessor.getOutputFileName(image.getName()));
+    }
+
+    /**
+     * 命令行入口
+     * 用法: ExportCoordinator &lt;端口&gt; &lt;输出目录&gt; &lt;输入目录或文件...&gt;
+     *       [--template 模板名] [--format jpeg|png|qoi|tiff] [--quality 0.9] [--max-kb 500] [--max-px 2048] [--shard 32]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("用法: ExportCoordinator <端口> <输出目录> <输入目录或文件...> "
+                    + "[--template 模板名] [--format jpeg|png|qoi|tiff] [--quality 0.9] [--max-kb 500] [--max-px 2048] [--shard 32]");
+            System.exit(1);
+        }
+        int port = Integer.parseInt(args[0]);
+        File outputDir = new File(args[1]);
+        outputDir.mkdirs();
+
+        WatermarkSettings settings = new WatermarkSettings();
+        ImageProcessor processor = new ImageProcessor();
+        int shardSize = 32;
+        List<File> images = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--template":
+                    WatermarkSettings template = new ConfigManager().loadTemplate(args[++i]);
+                    if (template == null) {
+                        System.err.println("模板不存在: " + args[i]);
+                        System.exit(1);
+                    }
+                    settings = template;
+                    break;
+                case "--format":
+                    processor.setOutputFormat(args[++i]);
+                    break;
+                case "--quality":
+                    processor.setJpegQuality(Float.parseFloat(args[++i]));
+                    break;
+                case "--max-kb":
+                    processor.setMaxFileSizeKb(Integer.parseInt(args[++i]));
+                    break;
+                case "--max-px":
+                    processor.setMaxDimension(Integer.parseInt(args[++i]));
+                    break;
+                case "--shard":
+                    shardSize = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    collectImages(new File(args[i]), images);
+            }
+        }
+
+        ExportCoordinator coordinator = new ExportCoordinator(settings, processor, outputDir, shardSize);
+        BatchExporter.Result result = coordinator.run(images, port);
+        System.out.println("[协调] 完成 导出: " + result.exported + " 跳过: " + result.skipped + " 失败: " + result.failed);
+    }
+
+    /**
+     * 收集图片文件，目录只扫描一层
+     */
+    static void collectImages(File file, List<File> images) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles((dir, name) -> isImageName(name));
+            if (files != null) {
+                Arrays.sort(files);
+                images.addAll(Arrays.asList(files));
+            }
+        } else if (file.isFile()) {
+            images.add(file);
+        }
+    }
+
+    /**
+     * 判断文件名是否为支持的图片格式
+     */
+    static boolean isImageName(String name) {
+        String lowercaseName = name.toLowerCase();
+        return lowercaseName.endsWith(".jpg") || lowercaseName.endsWith(".jpeg") ||
+               lowercaseName.endsWith(".png") || lowercaseName.endsWith(".bmp") ||
+               lowercaseName.endsWith(".tiff");
+    }
+}
@@ -0,0 +1,214 @@
+package main.java;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * 导出状态面板
+ * 导出在后台进行时按固定间隔读取 {@link ExportStats}，显示速率、各阶段耗时、队列长度、
+ * 计算线程利用率、堆内存和预计剩余时间，并可以在导出过程中调整计算线程数
+ */
+public final class ExportDashboard extends JDialog {
+    private static final long serialVersionUID = 1L;
+    // 刷新间隔(毫秒)
+    private static final int REFRESH_MS = 500;
+    // 计算线程利用率超过该值时认为瓶颈在计算
+    private static final double CPU_BOUND_UTILIZATION = 0.85;
+
+    private final transient ExportStats stats;
+    private final transient Timer timer;
+    private final JProgressBar progressBar = new JProgressBar();
+    private final JLabel countLabel = new JLabel();
+    private final JLabel rateLabel = new JLabel();
+    private final JLabel throughputLabel = new JLabel();
+    private final JLabel stageLabel = new JLabel();
+    private final JLabel queueLabel = new JLabel();
+    private final JLabel utilizationLabel = new JLabel();
+    private final JLabel heapLabel = new JLabel();
+    private final JLabel etaLabel = new JLabel();
+    private final JLabel bottleneckLabel = new JLabel();
+    private final JButton closeButton = new JButton("后台运行");
+
+    // 上次刷新时的计数，用于计算区间速率
+    private long lastNanos;
+    private int lastProcessed;
+    private long lastBytesRead;
+    private long lastBytesWritten;
+    private long lastCpuNanos;
+
+    public ExportDashboard(Frame owner, ExportStats stats) {
+        super(owner, "导出状态", false);
+        this.stats = stats;
+
+        JPanel rows = new JPanel(new GridLayout(0, 2, 10, 4));
+        rows.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        addRow(rows, "进度:", countLabel);
+        addRow(rows, "速度:", rateLabel);
+        addRow(rows, "读写:", throughputLabel);
+        addRow(rows, "阶段耗时(每张):", stageLabel);
+        addRow(rows, "队列:", queueLabel);
+        addRow(rows, "计算线程利用率:", utilizationLabel);
+        addRow(rows, "堆内存:", heapLabel);
+        addRow(rows, "预计剩余:", etaLabel);
+        addRow(rows, "瓶颈:", bottleneckLabel);
+
+        JSpinner threadSpinner = new JSpinner(new SpinnerNumberModel(PipelineExecutors.getCpuThreads(), 1,
+                Math.max(64, Runtime.getRuntime().availableProcessors() * 4), 1));
+        threadSpinner.addChangeListener(e ->
+                PipelineExecutors.setCpuThreads((Integer) threadSpinner.getValue()));
+        addRow(rows, "计算线程数:", threadSpinner);
+
+        progressBar.setStringPainted(true);
+        JPanel top = new JPanel(new BorderLayout());
+        top.setBorder(BorderFactory.createEmptyBorder(10, 10, 0, 10));
+        top.add(progressBar, BorderLayout.CENTER);
+
+        closeButton.addActionListener(e -> dispose());
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(closeButton);
+
+        setLayout(new BorderLayout());
+        add(top, BorderLayout.NORTH);
+        add(rows, BorderLayout.CENTER);
+        add(buttons, BorderLayout.SOUTH);
+
+        lastNanos = System.nanoTime();
+        timer = new Timer(REFRESH_MS, e -> refresh());
+        refresh();
+        pack();
+        setMinimumSize(new Dimension(560, getHeight()));
+        setLocationRelativeTo(owner);
+    }
+
+    private static void addRow(JPanel panel, String title, JComponent value) {
+        panel.add(new JLabel(title));
+        panel.add(value);
+    }
+
+    /**
+     * 显示面板并开始刷新
+     */
+    public void start() {
+        timer.start();
+        setVisible(true);
+    }
+
+    /**
+     * 导出结束，停止刷新并显示最终结果
+     */
+    public void finish() {
+        timer.stop();
+        refresh();
+        closeButton.setText("关闭");
+    }
+
+    @Override
+    public void dispose() {
+        timer.stop();
+        super.dispose();
+    }
+
+    /**
+     * 读取统计并更新显示
+     */
+    private void refresh() {
+        long now = System.nanoTime();
+        double interval = Math.max(1e-3, (now - lastNanos) / 1e9);
+        double elapsed = stats.getElapsedNanos() / 1e9;
+        int total = stats.getTotal();
+        int exported = stats.getExported();
+        int failed = stats.getFailed();
+        int skipped = stats.getSkipped();
+        int processed = exported + failed;
+
+        progressBar.setMaximum(Math.max(1, total));
+        progressBar.setValue(total - stats.getRemaining());
+        countLabel.setText(String.format("%d / %d （导出 %d，跳过 %d，失败 %d）",
+                total - stats.getRemaining(), total, exported, skipped, failed));
+
+        double averageRate = processed / elapsed;
+        double currentRate = stats.isFinished() ? averageRate : (processed - lastProcessed) / interval;
+        rateLabel.setText(String.format("%.1f 张/秒（平均 %.1f 张/秒）", currentRate, averageRate));
+
+        long bytesRead = stats.getBytesRead();
+        long bytesWritten = stats.getBytesWritten();
+        double readRate = stats.isFinished() ? bytesRead / elapsed : (bytesRead - lastBytesRead) / interval;
+        double writeRate = stats.isFinished() ? bytesWritten / elapsed : (bytesWritten - lastBytesWritten) / interval;
+        throughputLabel.setText(String.format("读取 %.1f MB/s，写入 %.1f MB/s",
+                readRate / (1 << 20), writeRate / (1 << 20)));
+
+        StringBuilder stages = new StringBuilder("<html>");
+        long stageTotal = 0;
+        for (ExportStats.Stage stage : ExportStats.Stage.values()) {
+            stageTotal += stats.getStageNanos(stage);
+        }
+        for (ExportStats.Stage stage : ExportStats.Stage.values()) {
+            long nanos = stats.getStageNanos(stage);
+            stages.append(String.format("%s %.1f ms (%d%%)", stage.getDisplayName(),
+                    processed == 0 ? 0.0 : nanos / 1e6 / processed,
+                    stageTotal == 0 ? 0 : Math.round(nanos * 100.0 / stageTotal)));
+            stages.append(stage.ordinal() % 2 == 1 ? "<br>" : "，");
+        }
+        stageLabel.setText(stages.append("</html>").toString());
+
+        int waitRead = stats.getCount(ExportStats.Phase.WAIT_READ);
+        int reading = stats.getCount(ExportStats.Phase.READING);
+        int waitCpu = stats.getCount(ExportStats.Phase.WAIT_CPU);
+        int waitMemory = stats.getCount(ExportStats.Phase.WAIT_MEMORY);
+        int rendering = stats.getCount(ExportStats.Phase.RENDERING);
+        int waitWrite = stats.getCount(ExportStats.Phase.WAIT_WRITE);
+        int writing = stats.getCount(ExportStats.Phase.WRITING);
+        queueLabel.setText(String.format("<html>读取 %d+%d，计算 %d+%d，写入 %d+%d<br>（等待+进行中），等待内存 %d</html>",
+                waitRead, reading, waitCpu, rendering, waitWrite, writing, waitMemory));
+
+        // 按计算阶段的累计耗时估算利用率，比采样活动线程数更稳定
+        long cpuNanos = stats.getStageNanos(ExportStats.Stage.DECODE)
+                + stats.getStageNanos(ExportStats.Stage.WATERMARK)
+                + stats.getStageNanos(ExportStats.Stage.ENCODE);
+        int threads = PipelineExecutors.getCpuThreads();
+        double utilization = stats.isFinished()
+                ? cpuNanos / (elapsed * 1e9 * threads)
+                : (cpuNanos - lastCpuNanos) / (interval * 1e9 * threads);
+        utilization = Math.min(1.0, Math.max(0.0, utilization));
+        utilizationLabel.setText(String.format("%d%%（%d 个线程，%d 个忙碌）",
+                Math.round(utilization * 100), threads, PipelineExecutors.getActiveCpuThreads()));
+
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        heapLabel.setText(String.format("%d MB / %d MB", used >> 20, runtime.maxMemory() >> 20));
+
+        int remaining = stats.getRemaining();
+        if (stats.isFinished()) {
+            etaLabel.setText(String.format("已完成，用时 %s", formatSeconds(elapsed)));
+        } else if (averageRate > 0) {
+            etaLabel.setText(formatSeconds(remaining / averageRate));
+        } else {
+            etaLabel.setText("计算中...");
+        }
+
+        if (stats.isFinished() || processed == 0) {
+            bottleneckLabel.setText("-");
+        } else if (waitMemory > 0 && utilization < CPU_BOUND_UTILIZATION) {
+            bottleneckLabel.setText("内存预算（大图同时解码数量受限）");
+        } else if (utilization >= CPU_BOUND_UTILIZATION) {
+            bottleneckLabel.setText("计算（解码/加水印/编码）");
+        } else if (waitWrite + writing > waitCpu + rendering) {
+            bottleneckLabel.setText("写入");
+        } else if (waitCpu == 0 && waitRead + reading > 0) {
+            bottleneckLabel.setText("读取");
+        } else {
+            bottleneckLabel.setText("-");
+        }
+
+        lastNanos = now;
+        lastProcessed = processed;
+        lastBytesRead = bytesRead;
+        lastBytesWritten = bytesWritten;
+        lastCpuNanos = cpuNanos;
+    }
+
+    private static String formatSeconds(double seconds) {
+        long total = Math.round(seconds);
+        return String.format("%d:%02d:%02d", total / 3600, total / 60 % 60, total % 60);
+    }
+}
@@ -0,0 +1,397 @@
+package main.java;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 可恢复的导出任务
+ * 任务开始时在输出目录写入追加式日志，记录水印设置、输出选项和全部待导出文件，
+ * 之后每完成或失败一个文件追加一行（成功时附带输出文件的大小和CRC32）。
+ * 进程中途退出后可以从日志恢复任务，已完成且输出文件完好的图片不会重新导出。
+ * <pre>
+ * JOB    &lt;水印设置&gt; &lt;输出选项&gt;
+ * QUEUED &lt;源文件&gt;
+ * DONE   &lt;源文件&gt; &lt;输出大小&gt; &lt;输出CRC32&gt;
+ * FAILED &lt;源文件&gt;
+ * </pre>
+ * 字段以制表符分隔，路径和设置用Base64编码，每行末尾附带该行的CRC32，
+ * 崩溃时写了一半的最后一行会被忽略
+ */
+public class ExportJob {
+    public static final String JOURNAL_NAME = ".watermark_job";
+
+    private static final String JOB = "JOB";
+    private static final String QUEUED = "QUEUED";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+
+    private final File outputDir;
+    private final File journalFile;
+    private final WatermarkSettings settings;
+    private final Map<String, String> options;
+    private final ImageProcessor imageProcessor;
+    // 源文件路径 -> 状态，保持加入顺序
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private Writer journal;
+    private boolean failures = false;
+
+    /**
+     * 单个文件的状态
+     */
+    private static class Entry {
+        final File source;
+        String state = QUEUED;
+        long outputSize;
+        long checksum;
+
+        Entry(File source) {
+            this.source = source;
+        }
+    }
+
+    private ExportJob(File outputDir, WatermarkSettings settings, Map<String, String> options) {
+        this.outputDir = outputDir;
+        this.journalFile = new File(outputDir, JOURNAL_NAME);
+        this.settings = settings;
+        this.options = options;
+        this.imageProcessor = new ImageProcessor();
+        this.imageProcessor.applyOutputOptions(options);
+    }
+
+    /**
+     * 创建新任务，覆盖输出目录中已有的任务日志
+     * @param outputDir 输出目录
+     * @param images 待导出的源文件
+     * @param settings 水印设置，保存一份快照
+     * @param options 输出选项
+     * @return 新任务
+     * @throws IOException 无法写入任务日志
+     */
+    public static ExportJob create(File outputDir, List<File> images, WatermarkSettings settings,
+                                   Map<String, String> options) throws IOException {
+        ExportJob job = new ExportJob(outputDir, settings.copy(), new LinkedHashMap<>(options));
+        FileOutputStream stream = new FileOutputStream(job.journalFile);
+        job.journal = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        job.append(JOB, ExportProtocol.encodeSettings(job.settings), ExportProtocol.encodeOptions(job.options));
+        for (File image : images) {
+            File source = image.getAbsoluteFile();
+            if (job.entries.putIfAbsent(source.getPath(), new Entry(source)) == null) {
+                job.append(QUEUED, ExportProtocol.encodeText(source.getPath()));
+            }
+        }
+        // 文件列表落盘后才开始导出，之后的进度行只需交给操作系统
+        job.journal.flush();
+        stream.getFD().sync();
+        return job;
+    }
+
+    /**
+     * 打开输出目录中未完成的任务
+     * @param outputDir 输出目录
+     * @return 任务，不存在或日志已损坏时返回null
+     */
+    public static ExportJob open(File outputDir) {
+        File journalFile = new File(outputDir, JOURNAL_NAME);
+        if (!journalFile.exists()) {
+            return null;
+        }
+        ExportJob job = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = parse(line);
+                if (parts == null) {
+                    // 只可能是崩溃时写了一半的最后一行
+                    break;
+                }
+                if (job == null) {
+                    if (!parts[0].equals(JOB) || parts.length != 3) {
+                        return null;
+                    }
+                    job = new ExportJob(outputDir, ExportProtocol.decodeSettings(parts[1]),
+                            ExportProtocol.decodeOptions(parts[2]));
+                    continue;
+                }
+                String path = ExportProtocol.decodeText(parts[1]);
+                switch (parts[0]) {
+                    case QUEUED:
+                        job.entries.putIfAbsent(path, new Entry(new File(path)));
+                        break;
+                    case DONE:
+                        Entry done = job.entries.get(path);
+                        if (done != null && parts.length == 4) {
+                            done.state = DONE;
+                            done.outputSize = Long.parseLong(parts[2]);
+                            done.checksum = Long.parseLong(parts[3], 16);
+                        }
+                        break;
+                    case FAILED:
+                        Entry failed = job.entries.get(path);
+                        if (failed != null) {
+                            failed.state = FAILED;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * 获取仍需导出的文件
+     * 已完成但输出文件缺失或大小不符的文件也会重新导出，上次失败的文件会重试
+     * @return 源文件列表
+     */
+    public synchronized List<File> getPending() {
+        List<File> pending = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!entry.state.equals(DONE) || !isIntact(entry)) {
+                pending.add(entry.source);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 获取已完成且输出文件完好的文件
+     * @return 源文件列表
+     */
+    public synchronized List<File> getCompleted() {
+        List<File> completed = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.state.equals(DONE) && isIntact(entry)) {
+                completed.add(entry.source);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * @return 任务中的文件总数
+     */
+    public synchronized int getTotal() {
+        return entries.size();
+    }
+
+    /**
+     * 重新计算已完成文件的输出CRC32，内容不符的文件改为待导出
+     * @return 内容不符的文件数
+     */
+    public synchronized int verify() {
+        int corrupted = 0;
+        for (Entry entry : entries.values()) {
+            if (!entry.state.equals(DONE) || !isIntact(entry)) {
+                continue;
+            }
+            try {
+                if (checksum(Files.readAllBytes(outputFileFor(entry.source).toPath())) != entry.checksum) {
+                    entry.state = QUEUED;
+                    corrupted++;
+                }
+            } catch (IOException e) {
+                entry.state = QUEUED;
+                corrupted++;
+            }
+        }
+        return corrupted;
+    }
+
+    /**
+     * 计算输出内容的CRC32
+     * @param data 输出文件内容
+     * @return 校验值
+     */
+    public static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private boolean isIntact(Entry entry) {
+        File outputFile = outputFileFor(entry.source);
+        return outputFile.isFile() && outputFile.length() == entry.outputSize;
+    }
+
+    /**
+     * 为任务创建导出器，使用任务保存的水印设置和输出选项
+     * @return 导出器
+     */
+    public BatchExporter createExporter() {
+        return createExporter(new WatermarkManager());
+    }
+
+    /**
+     * 为任务创建导出器，水印图章等缓存与指定的管理器共用
+     * @param cacheSource 提供缓存的水印管理器，其当前设置不影响导出
+     * @return 导出器
+     */
+    public BatchExporter createExporter(WatermarkManager cacheSource) {
+        WatermarkManager watermarkManager = cacheSource.withSettings(settings.copy());
+        ImageProcessor imageProcessor = new ImageProcessor();
+        imageProcessor.applyOutputOptions(options);
+        return new BatchExporter(imageProcessor, watermarkManager);
+    }
+
+    /**
+     * 记录导出成功的文件
+     * @param source 源文件
+     * @param outputSize 输出文件大小
+     * @param checksum 输出文件内容的CRC32
+     */
+    public synchronized void markDone(File source, long outputSize, long checksum) {
+        Entry entry = entries.get(source.getAbsolutePath());
+        if (entry == null) {
+            return;
+        }
+        entry.state = DONE;
+        entry.outputSize = outputSize;
+        entry.checksum = checksum;
+        appendQuietly(DONE, ExportProtocol.encodeText(entry.source.getPath()),
+                Long.toString(outputSize), Long.toHexString(checksum));
+    }
+
+    /**
+     * 记录导出失败的文件，恢复任务时会重试
+     * @param source 源文件
+     */
+    public synchronized void markFailed(File source) {
+        Entry entry = entries.get(source.getAbsolutePath());
+        if (entry == null) {
+            return;
+        }
+        entry.state = FAILED;
+        failures = true;
+        appendQuietly(FAILED, ExportProtocol.encodeText(entry.source.getPath()));
+    }
+
+    /**
+     * 结束本次运行
+     * 全部文件都已完成时删除任务日志，否则保留以便之后恢复
+     */
+    public synchronized void finish() {
+        closeJournal();
+        if (!failures && getPending().isEmpty()) {
+            journalFile.delete();
+        }
+    }
+
+    /**
+     * 放弃任务并删除任务日志
+     */
+    public synchronized void discard() {
+        closeJournal();
+        journalFile.delete();
+    }
+
+    /**
+     * 计算源文件对应的输出文件
+     */
+    public File outputFileFor(File source) {
+        return new File(outputDir, imageProcessor.getOutputFileName(source.getName()));
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    /**
+     * 恢复时以追加方式重新打开日志
+     */
+    private void ensureJournal() throws IOException {
+        if (journal == null) {
+            journal = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(journalFile, true), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void appendQuietly(String... fields) {
+        try {
+            ensureJournal();
+            append(fields);
+            // 每条进度都交给操作系统，JVM崩溃时不会丢失
+            journal.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void append(String... fields) throws IOException {
+        String text = String.join("\t", fields);
+        journal.write(text + "\t" + Long.toHexString(crc(text)) + "\n");
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        journal = null;
+    }
+
+    /**
+     * 校验并拆分一行日志
+     * @return 去掉校验值后的字段，校验失败返回null
+     */
+    private static String[] parse(String line) {
+        int split = line.lastIndexOf('\t');
+        if (split <= 0) {
+            return null;
+        }
+        String text = line.substring(0, split);
+        try {
+            if (Long.parseLong(line.substring(split + 1), 16) != crc(text)) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String[] parts = text.split("\t");
+        return parts.length >= 2 ? parts : null;
+    }
+
+    private static long crc(String text) {
+        return checksum(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 命令行入口
+     * 用法: ExportJob status|resume &lt;输出目录&gt; [--verify]
+     * --verify 会重新校验已完成文件的CRC32，内容不符的文件重新导出
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("status") || args[0].equals("resume"))) {
+            System.err.println("用法: ExportJob status|resume <输出目录> [--verify]");
+            System.exit(1);
+        }
+        File outputDir = new File(args[1]);
+        ExportJob job = open(outputDir);
+        if (job == null) {
+            System.out.println("[任务] " + outputDir + " 中没有未完成的导出任务");
+            return;
+        }
+        if (args.length > 2 && args[2].equals("--verify")) {
+            System.out.println("[任务] 校验不符: " + job.verify() + " 张");
+        }
+        int pending = job.getPending().size();
+        System.out.println("[任务] 共 " + job.getTotal() + " 张，已完成 " + (job.getTotal() - pending)
+                + " 张，待处理 " + pending + " 张");
+        if (args[0].equals("resume")) {
+            BatchExporter.Result result = job.createExporter().export(job);
+            System.out.println("[任务] 完成 导出: " + result.exported + " 跳过: " + result.skipped
+                    + " 失败: " + result.failed);
+        }
+    }
+}
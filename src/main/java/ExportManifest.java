@@ -0,0 +1,129 @@
+package main.java;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 导出清单类
+ * 记录输出目录中每个输出文件对应的源文件状态和设置指纹，
+ * 再次导出时跳过源文件和设置都未变化的图片
+ */
+public class ExportManifest {
+    public static final String MANIFEST_NAME = ".watermark_manifest";
+
+    private final File manifestFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean dirty = false;
+
+    /**
+     * 清单条目
+     */
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        final String fingerprint;
+        final String outputName;
+
+        Entry(long size, long lastModified, String fingerprint, String outputName) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fingerprint = fingerprint;
+            this.outputName = outputName;
+        }
+    }
+
+    public ExportManifest(File outputDir) {
+        this.manifestFile = new File(outputDir, MANIFEST_NAME);
+        load();
+    }
+
+    /**
+     * 判断源文件是否需要重新导出
+     * @param source 源文件
+     * @param fingerprint 设置指纹
+     * @param outputFile 输出文件
+     * @return 源文件、设置均未变化且输出文件存在时返回true
+     */
+    public synchronized boolean isUpToDate(File source, String fingerprint, File outputFile) {
+        Entry entry = entries.get(source.getAbsolutePath());
+        return entry != null
+                && entry.size == source.length()
+                && entry.lastModified == source.lastModified()
+                && entry.fingerprint.equals(fingerprint)
+                && entry.outputName.equals(outputFile.getName())
+                && outputFile.exists();
+    }
+
+    /**
+     * 记录导出成功的文件
+     * @param source 源文件
+     * @param fingerprint 设置指纹
+     * @param outputFile 输出文件
+     */
+    public synchronized void record(File source, String fingerprint, File outputFile) {
+        entries.put(source.getAbsolutePath(), new Entry(
+                source.length(), source.lastModified(), fingerprint, outputFile.getName()));
+        dirty = true;
+    }
+
+    /**
+     * 将清单写回磁盘
+     * 先写入临时文件再替换，避免中途崩溃损坏清单
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File tempFile = new File(manifestFile.getParentFile(), MANIFEST_NAME + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(e.getKey() + "\t" + entry.size + "\t" + entry.lastModified + "\t"
+                        + entry.fingerprint + "\t" + entry.outputName);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), manifestFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 从磁盘加载清单，格式错误的行会被忽略
+     */
+    private void load() {
+        if (!manifestFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length != 5) {
+                    continue;
+                }
+                try {
+                    entries.put(parts[0], new Entry(
+                            Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], parts[4]));
+                } catch (NumberFormatException ignored) {
+                    // 跳过损坏的条目，对应文件会被重新导出
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package main.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 分布式导出协议
+ * 协调节点与工作节点之间使用按行分隔的UTF-8文本消息，
+ * 路径、设置等可能包含空格的内容统一用Base64编码：
+ * <pre>
+ * 工作节点 -> 协调节点   HELLO &lt;节点名&gt; &lt;线程数&gt;
+ * 协调节点 -> 工作节点   SETTINGS &lt;水印设置&gt;
+ *                        OPTIONS &lt;输出选项&gt;
+ *                        OUTPUT &lt;输出目录&gt;
+ * 工作节点 -> 协调节点   NEXT
+ * 协调节点 -> 工作节点   SHARD &lt;分片编号&gt; &lt;文件数&gt;，随后每行 FILE &lt;路径&gt;
+ *                        或 WAIT &lt;毫秒&gt; / DONE
+ * 工作节点 -> 协调节点   OK &lt;序号&gt; / FAIL &lt;序号&gt; ...，最后 END &lt;分片编号&gt;
+ * </pre>
+ */
+public final class ExportProtocol {
+    public static final String HELLO = "HELLO";
+    public static final String SETTINGS = "SETTINGS";
+    public static final String OPTIONS = "OPTIONS";
+    public static final String OUTPUT = "OUTPUT";
+    public static final String NEXT = "NEXT";
+    public static final String SHARD = "SHARD";
+    public static final String FILE = "FILE";
+    public static final String WAIT = "WAIT";
+    public static final String DONE = "DONE";
+    public static final String OK = "OK";
+    public static final String FAIL = "FAIL";
+    public static final String END = "END";
+
+    private ExportProtocol() {
+    }
+
+    public static String encodeText(String text) {
+        return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeText(String encoded) {
+        return new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
+    }
+
+    public static String encodeSettings(WatermarkSettings settings) {
+        return Base64.getEncoder().encodeToString(TemplateStore.encode(settings));
+    }
+
+    public static WatermarkSettings decodeSettings(String encoded) throws IOException {
+        return TemplateStore.decode(Base64.getDecoder().decode(encoded));
+    }
+
+    public static String encodeOptions(Map<String, String> options) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(options.size());
+            for (Map.Entry<String, String> entry : options.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    public static Map<String, String> decodeOptions(String encoded) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            int count = in.readInt();
+            Map<String, String> options = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                options.put(in.readUTF(), in.readUTF());
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package main.java;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 导出统计类
+ * 批量导出过程中各阶段的累计耗时、读写字节数和各队列中的图片数量，
+ * 计数器可以被多个线程同时更新，界面按固定间隔读取并计算速率
+ */
+public class ExportStats {
+
+    /**
+     * 处理阶段，耗时分别累计
+     */
+    public enum Stage {
+        READ("读取"),
+        DECODE("解码"),
+        WATERMARK("加水印"),
+        ENCODE("编码"),
+        WRITE("写入");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 图片在流水线中所处的位置，等待和执行分开计数，可以看出哪一段在排队
+     */
+    public enum Phase {
+        WAIT_READ,
+        READING,
+        WAIT_CPU,
+        WAIT_MEMORY,
+        RENDERING,
+        WAIT_WRITE,
+        WRITING
+    }
+
+    private volatile long startNanos = System.nanoTime();
+    private volatile long finishNanos = 0;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger exported = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final AtomicInteger[] phaseCounts = new AtomicInteger[Phase.values().length];
+
+    public ExportStats() {
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+        }
+        for (int i = 0; i < phaseCounts.length; i++) {
+            phaseCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * 单张图片的位置跟踪，进入新位置时自动离开上一个位置
+     */
+    public class Task {
+        private Phase phase;
+
+        private Task(Phase phase) {
+            this.phase = phase;
+            phaseCounts[phase.ordinal()].incrementAndGet();
+        }
+
+        /**
+         * 进入新的位置
+         * @param next 新位置
+         */
+        public synchronized void moveTo(Phase next) {
+            if (phase != null) {
+                phaseCounts[phase.ordinal()].decrementAndGet();
+            }
+            phase = next;
+            phaseCounts[next.ordinal()].incrementAndGet();
+        }
+
+        /**
+         * 离开流水线，无论成功与否都应调用
+         */
+        public synchronized void finish() {
+            if (phase != null) {
+                phaseCounts[phase.ordinal()].decrementAndGet();
+                phase = null;
+            }
+        }
+    }
+
+    /**
+     * 开始计时
+     * @param total 本次导出的图片总数，包括被跳过的图片
+     */
+    public void start(int total) {
+        this.total.set(total);
+        startNanos = System.nanoTime();
+        finishNanos = 0;
+    }
+
+    /**
+     * 结束计时，之后的速率按结束时间计算
+     */
+    public void finish() {
+        finishNanos = System.nanoTime();
+    }
+
+    /**
+     * 开始跟踪一张图片
+     * @return 位于等待读取位置的跟踪对象
+     */
+    public Task newTask() {
+        return new Task(Phase.WAIT_READ);
+    }
+
+    /**
+     * 累计阶段耗时
+     * @param stage 阶段
+     * @param nanos 耗时(纳秒)
+     */
+    public void addTime(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    public void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public void markExported() {
+        exported.incrementAndGet();
+    }
+
+    public void markSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    public void markFailed() {
+        failed.incrementAndGet();
+    }
+
+    /**
+     * @return 从开始到现在（或结束时）经过的纳秒数
+     */
+    public long getElapsedNanos() {
+        long end = finishNanos != 0 ? finishNanos : System.nanoTime();
+        return Math.max(1, end - startNanos);
+    }
+
+    public boolean isFinished() {
+        return finishNanos != 0;
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    public int getExported() {
+        return exported.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return 尚未处理的图片数量
+     */
+    public int getRemaining() {
+        return Math.max(0, getTotal() - getExported() - getSkipped() - getFailed());
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @param stage 阶段
+     * @return 该阶段在所有线程中的累计耗时(纳秒)
+     */
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    /**
+     * @param phase 位置
+     * @return 当前处于该位置的图片数量
+     */
+    public int getCount(Phase phase) {
+        return phaseCounts[phase.ordinal()].get();
+    }
+}
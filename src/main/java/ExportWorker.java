@@ -0,0 +1,131 @@
+package main.java;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 分布式导出工作节点
+ * 连接协调节点，接收水印设置和输出选项后不断领取分片，
+ * 用本机所有核心并行处理分片中的文件并逐个回报结果
+ */
+public class ExportWorker {
+    private final String name;
+    private final int threads;
+
+    public ExportWorker(String name, int threads) {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * 连接协调节点并处理分片，直到协调节点通知全部完成
+     * @param host 协调节点地址
+     * @param port 协调节点端口
+     * @return 本节点成功导出的文件数
+     * @throws IOException 连接失败或协议错误
+     */
+    public int run(String host, int port) throws IOException {
+        int exported = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)), true)) {
+            out.println(ExportProtocol.HELLO + " " + name + " " + threads);
+
+            WatermarkManager watermarkManager = new WatermarkManager();
+            watermarkManager.applySettings(ExportProtocol.decodeSettings(expect(in, ExportProtocol.SETTINGS)));
+            ImageProcessor imageProcessor = new ImageProcessor();
+            imageProcessor.applyOutputOptions(ExportProtocol.decodeOptions(expect(in, ExportProtocol.OPTIONS)));
+            File outputDir = new File(ExportProtocol.decodeText(expect(in, ExportProtocol.OUTPUT)));
+            BatchExporter exporter = new BatchExporter(imageProcessor, watermarkManager);
+
+            while (true) {
+                out.println(ExportProtocol.NEXT);
+                String line = in.readLine();
+                if (line == null || line.equals(ExportProtocol.DONE)) {
+                    break;
+                }
+                String[] parts = line.split(" ");
+                if (parts[0].equals(ExportProtocol.WAIT)) {
+                    sleep(Long.parseLong(parts[1]));
+                    continue;
+                }
+                if (!parts[0].equals(ExportProtocol.SHARD)) {
+                    throw new IOException("意外的消息: " + line);
+                }
+
+                int shardId = Integer.parseInt(parts[1]);
+                int count = Integer.parseInt(parts[2]);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    File image = new File(ExportProtocol.decodeText(expect(in, ExportProtocol.FILE)));
+                    File outputFile = new File(outputDir, imageProcessor.getOutputFileName(image.getName()));
+                    results.add(pool.submit(() -> exporter.exportFile(image, outputFile)));
+                }
+                for (int i = 0; i < count; i++) {
+                    boolean ok;
+                    try {
+                        ok = results.get(i).get();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        ok = false;
+                    }
+                    out.println((ok ? ExportProtocol.OK : ExportProtocol.FAIL) + " " + i);
+                    if (ok) {
+                        exported++;
+                    }
+                }
+                out.println(ExportProtocol.END + " " + shardId);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return exported;
+    }
+
+    /**
+     * 读取一行并检查消息类型
+     * @return 消息内容
+     */
+    private static String expect(BufferedReader in, String type) throws IOException {
+        String line = in.readLine();
+        if (line == null || !line.startsWith(type + " ")) {
+            throw new IOException("期望 " + type + "，收到: " + line);
+        }
+        return line.substring(type.length() + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 命令行入口
+     * 用法: ExportWorker &lt;协调节点地址&gt; &lt;端口&gt; [线程数] [解码内存预算MB]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法: ExportWorker <协调节点地址> <端口> [线程数] [解码内存预算MB]");
+            System.exit(1);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            MemoryBudget.configureShared(Long.parseLong(args[3]) << 20);
+        }
+        String name = InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+        int exported = new ExportWorker(name, threads).run(args[0], Integer.parseInt(args[1]));
+        System.out.println("[工作节点] 完成，本节点导出 " + exported + " 张");
+    }
+}
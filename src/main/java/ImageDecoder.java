@@ -0,0 +1,53 @@
+package main.java;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * 图片解码器接口
+ * 解码器从内存中的文件内容解码图片，支持在解码时按1/2、1/4、1/8缩小，
+ * 缩略图、预览和限定尺寸的导出不必先得到原尺寸像素
+ */
+public interface ImageDecoder {
+    /**
+     * 是否能解码该文件，只检查文件头
+     * @param data 文件内容
+     * @return 能解码时返回true
+     */
+    boolean canDecode(byte[] data);
+
+    /**
+     * 读取图片尺寸，不解码像素
+     * @param data 文件内容
+     * @return 原始宽高，未按EXIF方向交换
+     * @throws IOException 文件头损坏
+     */
+    Dimension getSize(byte[] data) throws IOException;
+
+    /**
+     * 解码图片
+     * @param data 文件内容
+     * @param scale 缩小倍数，1、2、4或8，结果宽高为原尺寸除以倍数后向上取整
+     * @return 解码后的图片，不支持的文件返回null
+     * @throws IOException 解码失败
+     */
+    BufferedImage decode(byte[] data, int scale) throws IOException;
+
+    /**
+     * 选择解码时的缩小倍数
+     * @param width 原图宽度
+     * @param height 原图高度
+     * @param targetWidth 需要的最小宽度
+     * @param targetHeight 需要的最小高度
+     * @return 结果不小于目标尺寸的最大倍数
+     */
+    static int chooseScale(int width, int height, int targetWidth, int targetHeight) {
+        for (int scale = 8; scale > 1; scale /= 2) {
+            if ((width + scale - 1) / scale >= targetWidth && (height + scale - 1) / scale >= targetHeight) {
+                return scale;
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,130 @@
+package main.java;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.stream.IntStream;
+
+/**
+ * 输出格式编码器接口
+ * ImageProcessor按输出格式选择编码器，新增格式只需实现该接口
+ */
+public interface ImageEncoder {
+
+    /**
+     * @return 输出文件扩展名，包含点号
+     */
+    String getExtension();
+
+    /**
+     * @return 是否保留透明通道，不支持时调用方会先去掉透明通道
+     */
+    boolean supportsAlpha();
+
+    /**
+     * 编码图片
+     * @param image 图片
+     * @param metadata 源文件元数据，不支持元数据的格式忽略
+     * @param output 输出流
+     * @throws IOException 编码或写入失败
+     */
+    void write(BufferedImage image, ImageMetadata metadata, OutputStream output) throws IOException;
+
+    /**
+     * 编码为字节数组
+     * @param image 图片
+     * @param metadata 源文件元数据
+     * @return 文件内容
+     * @throws IOException 编码失败
+     */
+    default byte[] encode(BufferedImage image, ImageMetadata metadata) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        write(image, metadata, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * 取出RGB或RGBA顺序的非预乘8位像素，供无损格式的编码器使用
+     * 常见格式直接读取像素数组，其余格式逐行通过getRGB转换
+     * @param image 图片
+     * @param alpha 是否包含透明通道
+     * @return 逐行排列的像素字节
+     */
+    static byte[] toRgbBytes(BufferedImage image, boolean alpha) {
+        byte[] out = new byte[image.getWidth() * image.getHeight() * (alpha ? 4 : 3)];
+        toRgbBytes(image, alpha, 0, image.getHeight(), out);
+        return out;
+    }
+
+    /**
+     * 取出若干行的像素，逐段输出的编码器可以复用同一缓冲区，不必转换整张图片
+     * @param image 图片
+     * @param alpha 是否包含透明通道
+     * @param firstRow 起始行
+     * @param rows 行数
+     * @param out 输出缓冲区，从下标0开始逐行存放
+     */
+    static void toRgbBytes(BufferedImage image, boolean alpha, int firstRow, int rows, byte[] out) {
+        int width = image.getWidth();
+        int channels = alpha ? 4 : 3;
+        WritableRaster raster = image.getRaster();
+        int type = image.getType();
+        boolean plain = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getNumBanks() == 1 && raster.getDataBuffer().getOffset() == 0;
+
+        if (plain && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)) {
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int scan = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            IntStream.range(0, rows).parallel().forEach(y -> {
+                int in = (firstRow + y) * scan;
+                int o = y * width * channels;
+                for (int x = 0; x < width; x++) {
+                    int argb = data[in + x];
+                    out[o++] = (byte) (argb >> 16);
+                    out[o++] = (byte) (argb >> 8);
+                    out[o++] = (byte) argb;
+                    if (alpha) {
+                        out[o++] = (byte) (type == BufferedImage.TYPE_INT_ARGB ? argb >>> 24 : 0xFF);
+                    }
+                }
+            });
+        } else if (plain && (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)) {
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int scan = ((PixelInterleavedSampleModel) raster.getSampleModel()).getScanlineStride();
+            int bytes = type == BufferedImage.TYPE_4BYTE_ABGR ? 4 : 3;
+            // BGR存储为B、G、R，ABGR存储为A、B、G、R
+            int shift = bytes - 3;
+            IntStream.range(0, rows).parallel().forEach(y -> {
+                int in = (firstRow + y) * scan;
+                int o = y * width * channels;
+                for (int x = 0; x < width; x++, in += bytes) {
+                    out[o++] = data[in + shift + 2];
+                    out[o++] = data[in + shift + 1];
+                    out[o++] = data[in + shift];
+                    if (alpha) {
+                        out[o++] = shift == 1 ? data[in] : (byte) 0xFF;
+                    }
+                }
+            });
+        } else {
+            IntStream.range(0, rows).parallel().forEach(y -> {
+                int[] row = image.getRGB(0, firstRow + y, width, 1, null, 0, width);
+                int o = y * width * channels;
+                for (int argb : row) {
+                    out[o++] = (byte) (argb >> 16);
+                    out[o++] = (byte) (argb >> 8);
+                    out[o++] = (byte) argb;
+                    if (alpha) {
+                        out[o++] = (byte) (argb >>> 24);
+                    }
+                }
+            });
+        }
+    }
+}
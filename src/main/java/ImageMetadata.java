@@ -0,0 +1,317 @@
+package main.java;
+
+import java.awt.geom.AffineTransform;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 图片元数据
+ * 只解析JPEG文件头中SOS之前的标记段，不解码像素：读取EXIF方向，
+ * 并原样保留EXIF（APP1）和XMP（APP1）段，导出JPEG时再写回输出文件。像素已按方向摆正，写回的EXIF方向改为1。
+ * ICC配置文件（APP2）只供解码时把像素转换到sRGB，解码后的像素已是sRGB，不再写回
+ */
+public class ImageMetadata {
+    public static final ImageMetadata NONE = new ImageMetadata(1, Collections.emptyList(), -1, -1, null);
+
+    private static final int SOI = 0xD8;
+    private static final int SOS = 0xDA;
+    private static final int EOI = 0xD9;
+    private static final int APP0 = 0xE0;
+    private static final int APP1 = 0xE1;
+    private static final int APP2 = 0xE2;
+
+    private static final byte[] EXIF_ID = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] XMP_ID = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] ICC_ID = "ICC_PROFILE\0".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private final int orientation;
+    // 完整的标记段（含0xFF、标记和长度），按原文件顺序
+    private final List<byte[]> segments;
+    // 带方向标签的EXIF段序号及方向值在段内的位置，用于写回时改为1
+    private final int exifIndex;
+    private final int orientationOffset;
+    // 拼接后的ICC配置文件，没有时为null
+    private final byte[] iccProfile;
+
+    private ImageMetadata(int orientation, List<byte[]> segments, int exifIndex, int orientationOffset,
+                          byte[] iccProfile) {
+        this.orientation = orientation;
+        this.segments = segments;
+        this.exifIndex = exifIndex;
+        this.orientationOffset = orientationOffset;
+        this.iccProfile = iccProfile;
+    }
+
+    /**
+     * 从内存中的文件内容读取元数据
+     * @param data 文件内容
+     * @return 元数据，不是JPEG或文件头损坏时返回NONE
+     */
+    public static ImageMetadata read(byte[] data) {
+        try {
+            return parse(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * 从文件读取元数据，只读取文件头
+     * @param file 图片文件
+     * @return 元数据，不是JPEG或无法读取时返回NONE
+     */
+    public static ImageMetadata read(File file) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return parse(in);
+        } catch (IOException e) {
+            return NONE;
+        }
+    }
+
+    private static ImageMetadata parse(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != SOI) {
+            return NONE;
+        }
+        int orientation = 1;
+        int exifIndex = -1;
+        int orientationOffset = -1;
+        List<byte[]> segments = new ArrayList<>();
+        List<byte[]> iccChunks = new ArrayList<>();
+        while (true) {
+            int marker = in.readUnsignedByte();
+            if (marker != 0xFF) {
+                return NONE;
+            }
+            // 标记前可以有填充的0xFF
+            do {
+                marker = in.readUnsignedByte();
+            } while (marker == 0xFF);
+            if (marker == SOS || marker == EOI) {
+                break;
+            }
+            if (marker >= 0xD0 && marker <= 0xD7 || marker == 0x01) {
+                // 没有长度字段的标记
+                continue;
+            }
+            int length = in.readUnsignedShort();
+            if (length < 2) {
+                return NONE;
+            }
+            byte[] segment = new byte[length + 2];
+            segment[0] = (byte) 0xFF;
+            segment[1] = (byte) marker;
+            segment[2] = (byte) (length >> 8);
+            segment[3] = (byte) length;
+            in.readFully(segment, 4, length - 2);
+
+            if (marker == APP1 && startsWith(segment, EXIF_ID)) {
+                int offset = findOrientation(segment);
+                if (offset >= 0 && exifIndex < 0) {
+                    int value = readShort(segment, offset, segment[4 + EXIF_ID.length] == 'I');
+                    if (value >= 1 && value <= 8) {
+                        orientation = value;
+                    }
+                    exifIndex = segments.size();
+                    orientationOffset = offset;
+                }
+                segments.add(segment);
+            } else if (marker == APP1 && startsWith(segment, XMP_ID)) {
+                segments.add(segment);
+            } else if (marker == APP2 && startsWith(segment, ICC_ID) && segment.length > 4 + ICC_ID.length + 2) {
+                iccChunks.add(segment);
+            }
+        }
+        byte[] iccProfile = joinIccChunks(iccChunks);
+        if (segments.isEmpty() && orientation == 1 && iccProfile == null) {
+            return NONE;
+        }
+        return new ImageMetadata(orientation, segments, exifIndex, orientationOffset, iccProfile);
+    }
+
+    /**
+     * 按序号拼接分段存放的ICC配置文件
+     * 每段在标识后依次是序号（从1开始）和总段数
+     * @return 配置文件内容，没有或段不完整时返回null
+     */
+    private static byte[] joinIccChunks(List<byte[]> chunks) {
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        int header = 4 + ICC_ID.length + 2;
+        int count = chunks.get(0)[4 + ICC_ID.length + 1] & 0xFF;
+        if (count != chunks.size()) {
+            return null;
+        }
+        byte[][] ordered = new byte[count][];
+        int total = 0;
+        for (byte[] chunk : chunks) {
+            int sequence = chunk[4 + ICC_ID.length] & 0xFF;
+            if (sequence < 1 || sequence > count || ordered[sequence - 1] != null) {
+                return null;
+            }
+            ordered[sequence - 1] = chunk;
+            total += chunk.length - header;
+        }
+        byte[] profile = new byte[total];
+        int position = 0;
+        for (byte[] chunk : ordered) {
+            System.arraycopy(chunk, header, profile, position, chunk.length - header);
+            position += chunk.length - header;
+        }
+        return profile;
+    }
+
+    /**
+     * 在EXIF段的IFD0中查找方向标签
+     * @return 方向值在段中的位置，没有时返回-1
+     */
+    private static int findOrientation(byte[] segment) {
+        int tiff = 4 + EXIF_ID.length;
+        if (segment.length < tiff + 8) {
+            return -1;
+        }
+        boolean little;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            little = true;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            little = false;
+        } else {
+            return -1;
+        }
+        long ifd = readInt(segment, tiff + 4, little);
+        if (ifd < 8 || tiff + ifd + 2 > segment.length) {
+            return -1;
+        }
+        int entries = tiff + (int) ifd;
+        int count = readShort(segment, entries, little);
+        for (int i = 0; i < count; i++) {
+            int entry = entries + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return -1;
+            }
+            if (readShort(segment, entry, little) == ORIENTATION_TAG) {
+                return entry + 8;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 获取EXIF方向
+     * @return 1-8，没有EXIF方向时为1
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * 方向是否交换宽高（5-8）
+     */
+    public boolean swapsDimensions() {
+        return orientation >= 5;
+    }
+
+    /**
+     * 获取嵌入的ICC配置文件，解码器据此把像素转换到sRGB
+     * @return 配置文件内容，没有时返回null
+     */
+    public byte[] getIccProfile() {
+        return iccProfile;
+    }
+
+    /**
+     * 获取写入JPEG时会增加的字节数
+     * @return 保留的元数据段总长度
+     */
+    public int getSegmentBytes() {
+        int total = 0;
+        for (byte[] segment : segments) {
+            total += segment.length;
+        }
+        return total;
+    }
+
+    /**
+     * 把保留的元数据段写入编码好的JPEG
+     * 插入在SOI和编码器写出的JFIF段之后，EXIF方向改为1。
+     * 像素在解码时已转换到sRGB，原ICC段不写回，否则阅读器会把原配置文件再套用一次
+     * @param jpeg 编码好的JPEG文件内容
+     * @return 带元数据的JPEG文件内容
+     */
+    public byte[] insertInto(byte[] jpeg) {
+        if (segments.isEmpty() || jpeg.length < 4
+                || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != SOI) {
+            return jpeg;
+        }
+        int insertAt = 2;
+        if ((jpeg[2] & 0xFF) == 0xFF && (jpeg[3] & 0xFF) == APP0 && jpeg.length >= 6) {
+            insertAt = 4 + (((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF));
+        }
+        byte[] result = new byte[jpeg.length + getSegmentBytes()];
+        System.arraycopy(jpeg, 0, result, 0, insertAt);
+        int position = insertAt;
+        for (int i = 0; i < segments.size(); i++) {
+            byte[] segment = segments.get(i);
+            System.arraycopy(segment, 0, result, position, segment.length);
+            if (i == exifIndex) {
+                boolean little = segment[4 + EXIF_ID.length] == 'I';
+                int offset = position + orientationOffset;
+                result[offset] = (byte) (little ? 1 : 0);
+                result[offset + 1] = (byte) (little ? 0 : 1);
+            }
+            position += segment.length;
+        }
+        System.arraycopy(jpeg, insertAt, result, position, jpeg.length - insertAt);
+        return result;
+    }
+
+    /**
+     * 计算把原图按EXIF方向摆正的变换
+     * @param orientation EXIF方向
+     * @param width 原图宽度
+     * @param height 原图高度
+     * @return 从原图坐标到摆正后坐标的变换
+     */
+    public static AffineTransform transformFor(int orientation, int width, int height) {
+        switch (orientation) {
+            case 2: return new AffineTransform(-1, 0, 0, 1, width, 0);
+            case 3: return new AffineTransform(-1, 0, 0, -1, width, height);
+            case 4: return new AffineTransform(1, 0, 0, -1, 0, height);
+            case 5: return new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6: return new AffineTransform(0, 1, -1, 0, height, 0);
+            case 7: return new AffineTransform(0, -1, -1, 0, height, width);
+            case 8: return new AffineTransform(0, -1, 1, 0, 0, width);
+            default: return new AffineTransform();
+        }
+    }
+
+    private static boolean startsWith(byte[] segment, byte[] id) {
+        if (segment.length < 4 + id.length) {
+            return false;
+        }
+        for (int i = 0; i < id.length; i++) {
+            if (segment[4 + i] != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean little) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return little ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long readInt(byte[] data, int offset, boolean little) {
+        long high = readShort(data, offset, little);
+        long low = readShort(data, offset + 2, little);
+        return little ? (low << 16) | high : (high << 16) | low;
+    }
+}
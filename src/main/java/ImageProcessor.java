@@ -1,16 +1,20 @@
 package main.java;
 
-import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.ImageIcon;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 图片处理类
@@ -19,23 +23,282 @@ import java.util.Iterator;
 public class ImageProcessor {
     private String outputFormat = "jpeg"; // 默认输出格式
     private float jpegQuality = 0.9f;     // 默认JPEG质量
+    private JpegProfile jpegProfile = JpegProfile.BASELINE; // JPEG编码配置
+    private int maxFileSizeKb = 0;        // JPEG文件大小上限，0表示不限制
+    private int pngCompressionLevel = DEFAULT_PNG_LEVEL; // PNG压缩级别 0-9
+    private PngFilter pngFilter = PngFilter.ADAPTIVE;    // PNG行过滤方式
+    private TiffEncoder.Compression tiffCompression = TiffEncoder.Compression.LZW; // TIFF压缩方式
+    private int maxDimension = 0;         // 输出长边上限（像素），0表示保持原尺寸
+    private DecodedImageCache imageCache = DecodedImageCache.getShared(); // 预览和导出共用的解码缓存
+    private final TargetSizeEncoder targetSizeEncoder = new TargetSizeEncoder();
+    
+    private static final int DEFAULT_PNG_LEVEL = 6;
+    // 导出时每个输出像素大约占用的字节数：解码结果、加水印副本和编码缓冲各约4字节
+    private static final int PIPELINE_BYTES_PER_PIXEL = 12;
+    // 原尺寸解码时ImageIO的本地实现更快，纯Java的JPEG解码器只用于缩小解码
+    private static final ImageDecoder[] FULL_SIZE_DECODERS = {new ImageIODecoder()};
+    private static final ImageDecoder[] SCALED_DECODERS = {new JpegDecoder(), new ImageIODecoder()};
     private String namingRule = "original"; // 命名规则：original, prefix, suffix
     private String customText = "watermarked"; // 自定义前缀或后缀
     
     /**
      * 加载图片文件
+     * 结果可能来自共用的解码缓存，调用方不能修改
      * @param file 图片文件
      * @return 加载的图片
      */
     public BufferedImage loadImage(File file) {
+        if (imageCache != null) {
+            BufferedImage cached = imageCache.get(file, 1);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        try {
+            return decodeCached(file, readBytes(file), 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * 加载图片文件，解码时尽量缩小，结果不小于指定尺寸
+     * 解码倍数只按文件头计算，缓存中有分辨率足够的解码结果时直接使用，不读取整个文件，
+     * 预览随设置反复刷新时不必每次重新读盘。结果不能修改
+     * @param file 图片文件
+     * @param maxWidth 摆正后需要的宽度
+     * @param maxHeight 摆正后需要的高度
+     * @return 加载的图片，未按EXIF方向摆正
+     */
+    public BufferedImage loadImage(File file, int maxWidth, int maxHeight) {
         try {
-            return ImageIO.read(file);
+            int scale = chooseScaleToFit(readImageSize(file), maxWidth, maxHeight,
+                    ImageMetadata.read(file).getOrientation());
+            if (imageCache != null) {
+                BufferedImage cached = imageCache.getAtLeast(file, scale);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            return decodeCached(file, readBytes(file), scale);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
     
+    /**
+     * 读取文件的全部字节，慢速存储上适合在虚拟线程中调用
+     * @param file 文件
+     * @return 文件内容
+     * @throws IOException 读取失败
+     */
+    public byte[] readBytes(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+    
+    /**
+     * 从内存中的文件内容解码图片
+     * @param data 文件内容
+     * @return 解码后的图片，无法识别的格式返回null
+     */
+    public BufferedImage decodeImage(byte[] data) {
+        return decodeImage(data, 1);
+    }
+    
+    /**
+     * 从内存中的文件内容解码图片，解码时按倍数缩小
+     * 依次尝试各解码器，前一个不支持或解码失败时交给下一个
+     * @param data 文件内容
+     * @param scale 缩小倍数，1、2、4或8
+     * @return 解码后的图片，无法识别的格式返回null
+     */
+    public BufferedImage decodeImage(byte[] data, int scale) {
+        for (ImageDecoder decoder : scale > 1 ? SCALED_DECODERS : FULL_SIZE_DECODERS) {
+            if (!decoder.canDecode(data)) {
+                continue;
+            }
+            try {
+                BufferedImage image = decoder.decode(data, scale);
+                if (image != null) {
+                    return image;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("解码失败，尝试其他解码器: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 读取图片尺寸，不解码像素
+     * @param data 文件内容
+     * @return 原始宽高，无法识别时返回null
+     */
+    public Dimension getImageSize(byte[] data) {
+        for (ImageDecoder decoder : SCALED_DECODERS) {
+            if (!decoder.canDecode(data)) {
+                continue;
+            }
+            try {
+                Dimension size = decoder.getSize(data);
+                if (size != null) {
+                    return size;
+                }
+            } catch (IOException e) {
+                // 交给下一个解码器
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 从文件头读取图片尺寸，不读取整个文件
+     * @param file 图片文件
+     * @return 原始宽高，无法识别时返回null
+     * @throws IOException 读取失败
+     */
+    public Dimension readImageSize(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * 解码图片，在结果不小于适配尺寸的前提下尽量缩小解码
+     * @param data 文件内容
+     * @param maxWidth 摆正后的最大宽度
+     * @param maxHeight 摆正后的最大高度
+     * @param orientation EXIF方向
+     * @return 解码后的图片，未按EXIF方向摆正
+     */
+    public BufferedImage decodeToFit(byte[] data, int maxWidth, int maxHeight, int orientation) {
+        return decodeImage(data, chooseScaleToFit(data, maxWidth, maxHeight, orientation));
+    }
+    
+    private int chooseScaleToFit(byte[] data, int maxWidth, int maxHeight, int orientation) {
+        return chooseScaleToFit(getImageSize(data), maxWidth, maxHeight, orientation);
+    }
+    
+    private int chooseScaleToFit(Dimension size, int maxWidth, int maxHeight, int orientation) {
+        if (size == null) {
+            return 1;
+        }
+        boolean swap = orientation >= 5;
+        double fit = Math.min((double) maxWidth / (swap ? size.height : size.width),
+                (double) maxHeight / (swap ? size.width : size.height));
+        return ImageDecoder.chooseScale(size.width, size.height,
+                (int) Math.ceil(size.width * fit), (int) Math.ceil(size.height * fit));
+    }
+    
+    /**
+     * 解码图片并放入解码缓存，缓存中已有相同倍数的结果时直接使用
+     * @param file 源文件，为null时不使用缓存
+     * @param data 文件内容
+     * @param scale 解码缩小倍数
+     * @return 解码后的图片，不能修改
+     */
+    private BufferedImage decodeCached(File file, byte[] data, int scale) {
+        if (file == null || imageCache == null) {
+            return decodeImage(data, scale);
+        }
+        BufferedImage image = imageCache.get(file, scale);
+        if (image == null) {
+            image = decodeImage(data, scale);
+            imageCache.put(file, scale, image);
+        }
+        return image;
+    }
+    
+    /**
+     * 解码用于导出的图片，设置了长边上限时缩小到上限以内
+     * 缩小时先在解码阶段按1/2、1/4、1/8缩小，再缩放到目标尺寸
+     * @param data 文件内容
+     * @return 解码后的图片，无法识别的格式返回null
+     */
+    public BufferedImage decodeForOutput(byte[] data) {
+        return decodeForOutput(null, data);
+    }
+    
+    /**
+     * 解码用于导出的图片，解码结果经过共用的解码缓存，调整设置后重新导出时不必再次解码
+     * @param file 源文件，为null时不使用缓存
+     * @param data 文件内容
+     * @return 解码后的图片，可能来自缓存，不能修改
+     */
+    public BufferedImage decodeForOutput(File file, byte[] data) {
+        if (maxDimension <= 0) {
+            return decodeCached(file, data, 1);
+        }
+        Dimension size = getImageSize(data);
+        BufferedImage image;
+        if (size != null && Math.max(size.width, size.height) > maxDimension) {
+            int[] plan = planOutput(size);
+            int targetWidth = plan[1];
+            int targetHeight = plan[2];
+            image = decodeCached(file, data, plan[0]);
+            if (image != null && (image.getWidth() != targetWidth || image.getHeight() != targetHeight)) {
+                image = resizeImage(image, targetWidth, targetHeight);
+            }
+            return image;
+        }
+        image = decodeCached(file, data, 1);
+        if (image != null && size == null && Math.max(image.getWidth(), image.getHeight()) > maxDimension) {
+            double ratio = (double) maxDimension / Math.max(image.getWidth(), image.getHeight());
+            image = resizeImage(image, Math.max(1, (int) Math.round(image.getWidth() * ratio)),
+                    Math.max(1, (int) Math.round(image.getHeight() * ratio)));
+        }
+        return image;
+    }
+    
+    /**
+     * 按长边上限计算导出时的解码倍数和输出尺寸
+     * @param size 原图尺寸
+     * @return {解码倍数, 输出宽度, 输出高度}
+     */
+    private int[] planOutput(Dimension size) {
+        if (maxDimension <= 0 || Math.max(size.width, size.height) <= maxDimension) {
+            return new int[]{1, size.width, size.height};
+        }
+        double ratio = (double) maxDimension / Math.max(size.width, size.height);
+        int targetWidth = Math.max(1, (int) Math.round(size.width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(size.height * ratio));
+        return new int[]{ImageDecoder.chooseScale(size.width, size.height, targetWidth, targetHeight),
+                targetWidth, targetHeight};
+    }
+    
+    /**
+     * 估算导出一张图片所需的堆内存，只读取文件头中的尺寸，不解码
+     * 包括解码结果、加水印用的副本和编码缓冲，每像素按4字节计算
+     * @param data 文件内容
+     * @return 估算的字节数
+     */
+    public long estimateOutputMemory(byte[] data) {
+        Dimension size = getImageSize(data);
+        if (size == null) {
+            // 无法读取尺寸时按压缩率约为1/4估算像素数
+            return (long) data.length * 4 * PIPELINE_BYTES_PER_PIXEL;
+        }
+        int[] plan = planOutput(size);
+        long decoded = (long) ((size.width + plan[0] - 1) / plan[0]) * ((size.height + plan[0] - 1) / plan[0]);
+        long output = (long) plan[1] * plan[2];
+        return decoded * 4 + output * (PIPELINE_BYTES_PER_PIXEL - 4);
+    }
+    
     /**
      * 创建图片缩略图
      * @param file 图片文件
@@ -45,99 +308,197 @@ public class ImageProcessor {
      */
     public ImageIcon createThumbnail(File file, int maxWidth, int maxHeight) {
         try {
-            BufferedImage originalImage = ImageIO.read(file);
-            if (originalImage == null) {
-                return null;
-            }
-            
-            int originalWidth = originalImage.getWidth();
-            int originalHeight = originalImage.getHeight();
-            
-            // 计算缩放比例
-            double scale = Math.min(
-                    (double) maxWidth / originalWidth,
-                    (double) maxHeight / originalHeight
-            );
-            
-            // 计算缩略图尺寸
-            int thumbWidth = (int) (originalWidth * scale);
-            int thumbHeight = (int) (originalHeight * scale);
-            
-            // 创建缩略图
-            BufferedImage thumbnail = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_RGB);
-            Graphics2D g2d = thumbnail.createGraphics();
-            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g2d.drawImage(originalImage, 0, 0, thumbWidth, thumbHeight, null);
-            g2d.dispose();
-            
-            return new ImageIcon(thumbnail);
+            byte[] data = readBytes(file);
+            int orientation = ImageMetadata.read(data).getOrientation();
+            return scaleToThumbnail(decodeToFit(data, maxWidth, maxHeight, orientation),
+                    orientation, maxWidth, maxHeight);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
     
+    /**
+     * 异步创建图片缩略图
+     * 文件读取在虚拟线程中进行，解码和缩放在计算线程池中进行
+     * @param file 图片文件
+     * @param maxWidth 最大宽度
+     * @param maxHeight 最大高度
+     * @return 缩略图，读取或解码失败时结果为null
+     */
+    public CompletableFuture<ImageIcon> createThumbnailAsync(File file, int maxWidth, int maxHeight) {
+        return CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        return readBytes(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, PipelineExecutors.io())
+                .thenApplyAsync(data -> {
+                    int orientation = ImageMetadata.read(data).getOrientation();
+                    return scaleToThumbnail(decodeToFit(data, maxWidth, maxHeight, orientation),
+                            orientation, maxWidth, maxHeight);
+                }, PipelineExecutors.cpu())
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    return null;
+                });
+    }
+    
+    /**
+     * 缩放图片为缩略图，同时按EXIF方向摆正
+     */
+    private ImageIcon scaleToThumbnail(BufferedImage originalImage, int orientation, int maxWidth, int maxHeight) {
+        if (originalImage == null) {
+            return null;
+        }
+        
+        boolean swap = orientation >= 5;
+        int originalWidth = swap ? originalImage.getHeight() : originalImage.getWidth();
+        int originalHeight = swap ? originalImage.getWidth() : originalImage.getHeight();
+        
+        // 计算缩放比例
+        double scale = Math.min(
+                (double) maxWidth / originalWidth,
+                (double) maxHeight / originalHeight
+        );
+        
+        // 计算缩略图尺寸
+        int thumbWidth = Math.max(1, (int) (originalWidth * scale));
+        int thumbHeight = Math.max(1, (int) (originalHeight * scale));
+        
+        // 创建缩略图
+        BufferedImage thumbnail = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = thumbnail.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.scale((double) thumbWidth / originalWidth, (double) thumbHeight / originalHeight);
+        g2d.drawImage(originalImage,
+                ImageMetadata.transformFor(orientation, originalImage.getWidth(), originalImage.getHeight()), null);
+        g2d.dispose();
+        
+        return new ImageIcon(thumbnail);
+    }
+    
     /**
      * 保存图片到文件
      * @param image 图片
      * @param outputFile 输出文件
+     * @return 保存成功返回true
      */
-    public void saveImage(Image image, File outputFile) {
+    public boolean saveImage(Image image, File outputFile) {
         try {
-            // 转换为BufferedImage
-            BufferedImage bufferedImage;
-            if (image instanceof BufferedImage) {
-                bufferedImage = (BufferedImage) image;
-            } else {
-                bufferedImage = new BufferedImage(
-                        image.getWidth(null),
-                        image.getHeight(null),
-                        outputFormat.equalsIgnoreCase("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
-                );
-                Graphics2D g2d = bufferedImage.createGraphics();
-                g2d.drawImage(image, 0, 0, null);
-                g2d.dispose();
-            }
-            
-            // 根据输出格式保存
-            if (outputFormat.equalsIgnoreCase("jpeg") || outputFormat.equalsIgnoreCase("jpg")) {
-                saveJPEG(bufferedImage, outputFile, jpegQuality);
-            } else if (outputFormat.equalsIgnoreCase("png")) {
-                ImageIO.write(bufferedImage, "png", outputFile);
-            } else {
-                // 默认使用JPEG
-                saveJPEG(bufferedImage, outputFile, jpegQuality);
-            }
+            writeBytes(encodeImage(image), outputFile);
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
         }
     }
     
     /**
-     * 保存JPEG图片，可控制质量
+     * 按输出格式在内存中编码图片
      * @param image 图片
-     * @param outputFile 输出文件
-     * @param quality 质量 (0.0-1.0)
+     * @return 编码后的文件内容
+     * @throws IOException 编码失败
      */
-    private void saveJPEG(BufferedImage image, File outputFile, float quality) throws IOException {
-        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
-        if (!writers.hasNext()) {
-            throw new IOException("No JPEG writer found");
+    public byte[] encodeImage(Image image) throws IOException {
+        return encodeImage(image, ImageMetadata.NONE);
+    }
+    
+    /**
+     * 按输出格式在内存中编码图片
+     * 输出JPEG时写入源文件的EXIF和XMP段
+     * @param image 图片
+     * @param metadata 源文件元数据
+     * @return 编码后的文件内容
+     * @throws IOException 编码失败
+     */
+    public byte[] encodeImage(Image image, ImageMetadata metadata) throws IOException {
+        // 转换为BufferedImage
+        BufferedImage bufferedImage;
+        if (image instanceof BufferedImage) {
+            bufferedImage = (BufferedImage) image;
+        } else {
+            bufferedImage = new BufferedImage(
+                    image.getWidth(null),
+                    image.getHeight(null),
+                    keepsAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
+            );
+            Graphics2D g2d = bufferedImage.createGraphics();
+            g2d.drawImage(image, 0, 0, null);
+            g2d.dispose();
         }
         
-        ImageWriter writer = writers.next();
-        ImageWriteParam param = writer.getDefaultWriteParam();
-        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-        param.setCompressionQuality(quality);
-        
-        try (FileImageOutputStream output = new FileImageOutputStream(outputFile)) {
-            writer.setOutput(output);
-            writer.write(null, new IIOImage(image, null, null), param);
-        } finally {
-            writer.dispose();
+        // 根据输出格式编码
+        ImageEncoder encoder = getEncoder();
+        if (!encoder.supportsAlpha()) {
+            bufferedImage = toOpaque(bufferedImage);
+        }
+        return encoder.encode(bufferedImage, metadata);
+    }
+    
+    /**
+     * 获取当前输出格式的编码器
+     * @return 编码器，未知格式使用JPEG
+     */
+    public ImageEncoder getEncoder() {
+        switch (outputFormat.toLowerCase()) {
+            case "png":
+                return new PngEncoder(pngCompressionLevel, pngFilter);
+            case "qoi":
+                return new QoiEncoder();
+            case "tiff":
+                return new TiffEncoder(tiffCompression);
+            default:
+                // 默认使用JPEG
+                return new JpegEncoder(jpegQuality, jpegProfile, maxFileSizeKb, targetSizeEncoder);
+        }
+    }
+    
+    /**
+     * 将编码后的内容写入文件，慢速存储上适合在虚拟线程中调用
+     * @param data 文件内容
+     * @param outputFile 输出文件
+     * @throws IOException 写入失败
+     */
+    public void writeBytes(byte[] data, File outputFile) throws IOException {
+        // 先写入同目录的临时文件再替换，中途退出时不会留下不完整的输出文件
+        Path target = outputFile.toPath();
+        Path tempFile = target.resolveSibling("." + outputFile.getName() + ".part");
+        Files.write(tempFile, data);
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
     
+    /**
+     * 输出格式是否保留透明通道
+     * @return PNG、QOI、TIFF输出时返回true
+     */
+    public boolean keepsAlpha() {
+        return getEncoder().supportsAlpha();
+    }
+    
+    /**
+     * 去掉透明通道，JPEG编码器不支持带透明度的图片
+     * 不带透明通道的图片原样返回，不做转换
+     * @param image 图片
+     * @return 不带透明通道的图片
+     */
+    static BufferedImage toOpaque(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = opaque.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return opaque;
+    }
+    
     /**
      * 根据命名规则生成输出文件名
      * @param originalName 原文件名
@@ -155,10 +516,9 @@ public class ImageProcessor {
         }
         
         // 根据输出格式修改扩展名
-        if (outputFormat.equalsIgnoreCase("jpeg")) {
-            extension = ".jpg";
-        } else if (outputFormat.equalsIgnoreCase("png")) {
-            extension = ".png";
+        if (outputFormat.equalsIgnoreCase("jpeg") || outputFormat.equalsIgnoreCase("png")
+                || outputFormat.equalsIgnoreCase("qoi") || outputFormat.equalsIgnoreCase("tiff")) {
+            extension = getEncoder().getExtension();
         }
         
         // 根据命名规则生成文件名
@@ -173,6 +533,113 @@ public class ImageProcessor {
         }
     }
     
+    /**
+     * 获取输出规格描述
+     * 输出格式、质量和命名规则任一变化都会改变输出结果
+     * @return 输出规格字符串
+     */
+    public String getOutputSpec() {
+        // JPEG的质量、编码配置和大小上限只在输出JPEG时计入，调整它们不会使其他格式的输出失效
+        boolean jpeg = getEncoder() instanceof JpegEncoder;
+        String spec = outputFormat.toLowerCase() + (jpeg ? "|" + jpegQuality : "") + "|" + namingRule + "|" + customText;
+        // 默认的基线配置和不限大小不计入，已有的导出清单保持有效
+        if (jpeg && jpegProfile != JpegProfile.BASELINE) {
+            spec += "|" + jpegProfile.name();
+        }
+        if (jpeg && maxFileSizeKb > 0) {
+            spec += "|max" + maxFileSizeKb + "k";
+        }
+        if (outputFormat.equalsIgnoreCase("png")
+                && (pngCompressionLevel != DEFAULT_PNG_LEVEL || pngFilter != PngFilter.ADAPTIVE)) {
+            spec += "|png" + pngCompressionLevel + pngFilter.name();
+        }
+        if (outputFormat.equalsIgnoreCase("tiff")) {
+            spec += "|" + tiffCompression.name();
+        }
+        if (maxDimension > 0) {
+            spec += "|" + maxDimension + "px";
+        }
+        return spec;
+    }
+    
+    /**
+     * 导出输出选项，用于分发到其他节点或记录到任务中
+     * @return 有序的键值对
+     */
+    public Map<String, String> getOutputOptions() {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("outputFormat", outputFormat);
+        options.put("jpegQuality", String.valueOf(jpegQuality));
+        options.put("jpegProfile", jpegProfile.name());
+        options.put("maxFileSizeKb", String.valueOf(maxFileSizeKb));
+        options.put("pngCompressionLevel", String.valueOf(pngCompressionLevel));
+        options.put("pngFilter", pngFilter.name());
+        options.put("tiffCompression", tiffCompression.name());
+        options.put("maxDimension", String.valueOf(maxDimension));
+        options.put("namingRule", namingRule);
+        options.put("customText", customText);
+        return options;
+    }
+    
+    /**
+     * 应用输出选项，缺失或无法解析的选项保持不变
+     * @param options 键值对
+     */
+    public void applyOutputOptions(Map<String, String> options) {
+        if (options.containsKey("outputFormat")) outputFormat = options.get("outputFormat");
+        if (options.containsKey("jpegQuality")) {
+            try {
+                jpegQuality = Float.parseFloat(options.get("jpegQuality"));
+            } catch (NumberFormatException ignored) {
+                // 保持原有质量
+            }
+        }
+        if (options.containsKey("jpegProfile")) {
+            try {
+                jpegProfile = JpegProfile.valueOf(options.get("jpegProfile"));
+            } catch (IllegalArgumentException ignored) {
+                // 保持原有配置
+            }
+        }
+        if (options.containsKey("maxFileSizeKb")) {
+            try {
+                maxFileSizeKb = Integer.parseInt(options.get("maxFileSizeKb"));
+            } catch (NumberFormatException ignored) {
+                // 保持原有限制
+            }
+        }
+        if (options.containsKey("pngCompressionLevel")) {
+            try {
+                setPngCompressionLevel(Integer.parseInt(options.get("pngCompressionLevel")));
+            } catch (NumberFormatException ignored) {
+                // 保持原有级别
+            }
+        }
+        if (options.containsKey("pngFilter")) {
+            try {
+                pngFilter = PngFilter.valueOf(options.get("pngFilter"));
+            } catch (IllegalArgumentException ignored) {
+                // 保持原有过滤方式
+            }
+        }
+        if (options.containsKey("tiffCompression")) {
+            try {
+                tiffCompression = TiffEncoder.Compression.valueOf(options.get("tiffCompression"));
+            } catch (IllegalArgumentException ignored) {
+                // 保持原有压缩方式
+            }
+        }
+        if (options.containsKey("maxDimension")) {
+            try {
+                maxDimension = Integer.parseInt(options.get("maxDimension"));
+            } catch (NumberFormatException ignored) {
+                // 保持原有上限
+            }
+        }
+        if (options.containsKey("namingRule")) namingRule = options.get("namingRule");
+        if (options.containsKey("customText")) customText = options.get("customText");
+    }
+    
     // Getters and Setters
     
     public String getOutputFormat() {
@@ -191,6 +658,74 @@ public class ImageProcessor {
         this.jpegQuality = jpegQuality;
     }
     
+    public JpegProfile getJpegProfile() {
+        return jpegProfile;
+    }
+    
+    public void setJpegProfile(JpegProfile jpegProfile) {
+        this.jpegProfile = jpegProfile;
+    }
+    
+    public int getMaxFileSizeKb() {
+        return maxFileSizeKb;
+    }
+    
+    /**
+     * 设置JPEG文件大小上限，设置后忽略固定的JPEG质量
+     * @param maxFileSizeKb 上限（KB），0表示不限制
+     */
+    public void setMaxFileSizeKb(int maxFileSizeKb) {
+        this.maxFileSizeKb = Math.max(0, maxFileSizeKb);
+    }
+    
+    public int getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+    
+    public void setPngCompressionLevel(int pngCompressionLevel) {
+        this.pngCompressionLevel = Math.max(0, Math.min(9, pngCompressionLevel));
+    }
+    
+    public PngFilter getPngFilter() {
+        return pngFilter;
+    }
+    
+    public void setPngFilter(PngFilter pngFilter) {
+        this.pngFilter = pngFilter;
+    }
+    
+    public TiffEncoder.Compression getTiffCompression() {
+        return tiffCompression;
+    }
+    
+    public void setTiffCompression(TiffEncoder.Compression tiffCompression) {
+        this.tiffCompression = tiffCompression;
+    }
+    
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+    
+    /**
+     * 设置输出长边上限
+     * @param maxDimension 像素数，0表示保持原尺寸
+     */
+    public void setMaxDimension(int maxDimension) {
+        this.maxDimension = Math.max(0, maxDimension);
+    }
+    
+    public DecodedImageCache getImageCache() {
+        return imageCache;
+    }
+    
+    /**
+     * 设置解码缓存
+     * @param imageCache 解码缓存，为null时不缓存
+     */
+    public void setImageCache(DecodedImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+    
     public String getNamingRule() {
         return namingRule;
     }
@@ -0,0 +1,736 @@
+package main.java;
+
+import java.awt.Dimension;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 纯Java的基线JPEG解码器
+ * 只支持Huffman编码的基线和扩展顺序JPEG（SOF0/SOF1，8位，灰度或三通道），
+ * 渐进式、算术编码和CMYK等文件由其他解码器处理。
+ * 缩小解码在DCT域完成：每个8x8块只取左上角 N x N 个系数做N点反变换，
+ * 1/8时只用直流分量，不必得到原尺寸像素。色度分量按采样因子使用更大的反变换尺寸，
+ * 缩小后仍保留原有的色度分辨率
+ */
+public class JpegDecoder implements ImageDecoder {
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int DQT = 0xDB;
+    private static final int DHT = 0xC4;
+    private static final int DRI = 0xDD;
+    private static final int APP14 = 0xEE;
+
+    // 按zigzag顺序排列的系数在8x8块中的位置
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // 各输出尺寸（1、2、4、8点）的反变换系数表
+    private static final float[][] IDCT_TABLES = new float[9][];
+
+    static {
+        for (int n = 1; n <= 8; n *= 2) {
+            float[] table = new float[n * n];
+            for (int u = 0; u < n; u++) {
+                double scale = u == 0 ? 1 / (2 * Math.sqrt(2)) : 0.5;
+                for (int x = 0; x < n; x++) {
+                    table[u * n + x] = (float) (scale * Math.cos((2 * x + 1) * u * Math.PI / (2 * n)));
+                }
+            }
+            IDCT_TABLES[n] = table;
+        }
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        try {
+            Header header = new Header(data);
+            header.parse();
+            return header.supported;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Dimension getSize(byte[] data) throws IOException {
+        Header header = new Header(data);
+        header.parse();
+        return header.components == null ? null : new Dimension(header.width, header.height);
+    }
+
+    @Override
+    public BufferedImage decode(byte[] data, int scale) throws IOException {
+        Header header = new Header(data);
+        header.parse();
+        if (!header.supported) {
+            return null;
+        }
+        int size = 8 / Math.max(1, Math.min(8, Integer.highestOneBit(scale)));
+        header.assignSizes(size);
+        new Scan(header).decode();
+        return toSrgb(header.toImage(size), ImageMetadata.read(data).getIccProfile());
+    }
+
+    /**
+     * 按嵌入的ICC配置文件把RGB像素转换到sRGB，与ImageIO的解码结果一致，
+     * 导出时不写回原配置文件，像素必须已是sRGB
+     * @param image 解码结果，像素为配置文件所描述的颜色空间
+     * @param iccProfile 配置文件内容，为null时不转换
+     * @return sRGB图片，灰度图片和无法识别的配置文件原样返回
+     */
+    private static BufferedImage toSrgb(BufferedImage image, byte[] iccProfile) {
+        if (iccProfile == null || image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+        ICC_Profile profile;
+        try {
+            profile = ICC_Profile.getInstance(iccProfile);
+        } catch (IllegalArgumentException e) {
+            return image;
+        }
+        if (profile.getColorSpaceType() != ColorSpace.TYPE_RGB || profile.getNumComponents() != 3) {
+            return image;
+        }
+        // 同一组像素按配置文件的颜色空间解释，再转换到sRGB
+        ColorModel source = new ComponentColorModel(new ICC_ColorSpace(profile), false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        BufferedImage tagged = new BufferedImage(source, image.getRaster(), false, null);
+        BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        new ColorConvertOp(null).filter(tagged, result);
+        return result;
+    }
+
+    /**
+     * Huffman表，9位以内的码用查表一次解出，更长的码逐位比较
+     */
+    private static class Huffman {
+        static final int LOOKAHEAD = 9;
+
+        // (码长 << 8) | 符号，0表示需要逐位比较
+        final int[] lookup = new int[1 << LOOKAHEAD];
+        final int[] maxCode = new int[18];
+        final int[] valueOffset = new int[17];
+        final int[] symbols;
+
+        Huffman(int[] counts, int[] symbols) {
+            this.symbols = symbols;
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                valueOffset[length] = index - code;
+                for (int i = 0; i < counts[length]; i++) {
+                    if (length <= LOOKAHEAD) {
+                        int shift = LOOKAHEAD - length;
+                        int entry = (length << 8) | symbols[index];
+                        for (int fill = 0; fill < 1 << shift; fill++) {
+                            lookup[(code << shift) | fill] = entry;
+                        }
+                    }
+                    code++;
+                    index++;
+                }
+                maxCode[length] = counts[length] == 0 ? -1 : code - 1;
+                code <<= 1;
+            }
+            maxCode[17] = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 图像分量
+     */
+    private static class Component {
+        final int id;
+        final int h;
+        final int v;
+        final int quantTable;
+        int dcTable;
+        int acTable;
+        int blocksPerLine;
+        int blocksPerColumn;
+        // 每块反变换输出的宽高，色度分量在缩小解码时取更大的值以保留原有分辨率
+        int sizeH;
+        int sizeV;
+        // 解码后的分量平面，每块 sizeH x sizeV 个像素
+        byte[] plane;
+        int stride;
+        int predictor;
+
+        Component(int id, int h, int v, int quantTable) {
+            this.id = id;
+            this.h = h;
+            this.v = v;
+            this.quantTable = quantTable;
+        }
+    }
+
+    /**
+     * 文件头：量化表、Huffman表、帧和扫描参数
+     */
+    private static class Header {
+        final byte[] data;
+        int pos;
+        // 自然顺序的量化表
+        final int[][] quant = new int[4][];
+        final Huffman[] dcTables = new Huffman[4];
+        final Huffman[] acTables = new Huffman[4];
+        Component[] components;
+        int width;
+        int height;
+        int maxH = 1;
+        int maxV = 1;
+        int restartInterval;
+        int adobeTransform = -1;
+        boolean supported;
+        // 熵编码数据的起点
+        int scanStart;
+
+        Header(byte[] data) {
+            this.data = data;
+        }
+
+        void parse() throws IOException {
+            if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI) {
+                throw new IOException("不是JPEG文件");
+            }
+            pos = 2;
+            while (true) {
+                int marker = nextMarker();
+                if (marker == EOI) {
+                    return;
+                }
+                int length = readShort(pos);
+                int start = pos + 2;
+                int end = pos + length;
+                if (length < 2 || end > data.length) {
+                    throw new IOException("标记段长度错误");
+                }
+                if (marker == 0xC0 || marker == 0xC1) {
+                    readFrame(start);
+                } else if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC) {
+                    // 渐进式、无损或算术编码
+                    supported = false;
+                    if (components == null) {
+                        readFrameSize(start);
+                    }
+                    return;
+                } else if (marker == DQT) {
+                    readQuantTables(start, end);
+                } else if (marker == DHT) {
+                    readHuffmanTables(start, end);
+                } else if (marker == DRI) {
+                    restartInterval = readShort(start);
+                } else if (marker == APP14 && length >= 14 && data[start] == 'A' && data[start + 1] == 'd'
+                        && data[start + 2] == 'o' && data[start + 3] == 'b' && data[start + 4] == 'e') {
+                    adobeTransform = data[start + 11] & 0xFF;
+                } else if (marker == SOS) {
+                    supported = components != null && readScan(start);
+                    scanStart = end;
+                    return;
+                }
+                pos = end;
+            }
+        }
+
+        private int nextMarker() throws IOException {
+            while (pos + 1 < data.length && (data[pos] & 0xFF) != 0xFF) {
+                pos++;
+            }
+            while (pos < data.length && (data[pos] & 0xFF) == 0xFF) {
+                pos++;
+            }
+            if (pos >= data.length) {
+                throw new IOException("文件头不完整");
+            }
+            return data[pos++] & 0xFF;
+        }
+
+        private void readFrameSize(int start) {
+            height = readShort(start + 1);
+            width = readShort(start + 3);
+            components = new Component[0];
+        }
+
+        private void readFrame(int start) throws IOException {
+            int precision = data[start] & 0xFF;
+            readFrameSize(start);
+            int count = data[start + 5] & 0xFF;
+            if (precision != 8 || width == 0 || height == 0 || (count != 1 && count != 3)) {
+                // 不支持的帧，保留尺寸信息
+                return;
+            }
+            Component[] frame = new Component[count];
+            for (int i = 0; i < count; i++) {
+                int offset = start + 6 + i * 3;
+                int sampling = data[offset + 1] & 0xFF;
+                int h = sampling >> 4;
+                int v = sampling & 15;
+                if (h < 1 || h > 4 || v < 1 || v > 4) {
+                    throw new IOException("采样因子错误");
+                }
+                frame[i] = new Component(data[offset] & 0xFF, h, v, data[offset + 2] & 3);
+                maxH = Math.max(maxH, h);
+                maxV = Math.max(maxV, v);
+            }
+            components = frame;
+        }
+
+        private void readQuantTables(int offset, int end) {
+            while (offset < end) {
+                int precision = (data[offset] & 0xFF) >> 4;
+                int id = data[offset] & 3;
+                offset++;
+                int[] table = new int[64];
+                for (int i = 0; i < 64; i++) {
+                    if (precision == 0) {
+                        table[ZIGZAG[i]] = data[offset++] & 0xFF;
+                    } else {
+                        table[ZIGZAG[i]] = readShort(offset);
+                        offset += 2;
+                    }
+                }
+                quant[id] = table;
+            }
+        }
+
+        private void readHuffmanTables(int offset, int end) {
+            while (offset < end) {
+                int kind = (data[offset] & 0xFF) >> 4;
+                int id = data[offset] & 3;
+                int[] counts = new int[17];
+                int total = 0;
+                for (int i = 1; i <= 16; i++) {
+                    counts[i] = data[offset + i] & 0xFF;
+                    total += counts[i];
+                }
+                offset += 17;
+                int[] symbols = new int[total];
+                for (int i = 0; i < total; i++) {
+                    symbols[i] = data[offset + i] & 0xFF;
+                }
+                offset += total;
+                Huffman table = new Huffman(counts, symbols);
+                if (kind == 0) {
+                    dcTables[id] = table;
+                } else {
+                    acTables[id] = table;
+                }
+            }
+        }
+
+        /**
+         * 读取扫描参数，只支持包含全部分量的单次扫描
+         */
+        private boolean readScan(int start) {
+            int count = data[start] & 0xFF;
+            if (components.length == 0 || count != components.length) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                int id = data[start + 1 + i * 2] & 0xFF;
+                int tables = data[start + 2 + i * 2] & 0xFF;
+                Component component = components[i];
+                if (component.id != id) {
+                    return false;
+                }
+                component.dcTable = tables >> 4 & 3;
+                component.acTable = tables & 3;
+                if (dcTables[component.dcTable] == null || acTables[component.acTable] == null
+                        || quant[component.quantTable] == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int readShort(int offset) {
+            return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+        }
+
+        /**
+         * 三通道是否需要从YCbCr转换为RGB
+         */
+        boolean isYCbCr() {
+            if (adobeTransform >= 0) {
+                return adobeTransform != 0;
+            }
+            return !(components[0].id == 'R' && components[1].id == 'G' && components[2].id == 'B');
+        }
+
+        /**
+         * 确定各分量的反变换尺寸
+         * 色度分量在某个方向上的采样因子比亮度小一半时，该方向的反变换尺寸可以加倍（不超过8），
+         * 缩小解码后色度仍与输出像素一一对应，不必再放大
+         * @param size 亮度分量的反变换尺寸
+         */
+        void assignSizes(int size) {
+            for (Component component : components) {
+                component.sizeH = growSize(size, maxH, component.h);
+                component.sizeV = growSize(size, maxV, component.v);
+            }
+        }
+
+        private static int growSize(int size, int max, int sampling) {
+            int factor = 1;
+            while (size * factor * 2 <= 8 && max % (sampling * factor * 2) == 0) {
+                factor *= 2;
+            }
+            return size * factor;
+        }
+
+        /**
+         * 把分量平面合成为图片
+         * 色度分量需要水平放大2倍时按libjpeg的方式做三角滤波（相邻采样按3:1加权），其他情况直接复制
+         */
+        BufferedImage toImage(int size) {
+            int outWidth = (width * size + 7) / 8;
+            int outHeight = (height * size + 7) / 8;
+            if (components.length == 1) {
+                BufferedImage image = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_BYTE_GRAY);
+                byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                Component gray = components[0];
+                for (int y = 0; y < outHeight; y++) {
+                    System.arraycopy(gray.plane, y * gray.stride, pixels, y * outWidth, outWidth);
+                }
+                return image;
+            }
+
+            BufferedImage image = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_3BYTE_BGR);
+            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            byte[][] rows = new byte[3][];
+            for (int c = 0; c < 3; c++) {
+                rows[c] = new byte[outWidth];
+            }
+            boolean yCbCr = isYCbCr();
+            for (int y = 0; y < outHeight; y++) {
+                for (int c = 0; c < 3; c++) {
+                    upsampleRow(components[c], size, y, outWidth, rows[c]);
+                }
+                byte[] row0 = rows[0];
+                byte[] row1 = rows[1];
+                byte[] row2 = rows[2];
+                int out = y * outWidth * 3;
+                for (int x = 0; x < outWidth; x++) {
+                    int a = row0[x] & 0xFF;
+                    int b = row1[x] & 0xFF;
+                    int c = row2[x] & 0xFF;
+                    if (yCbCr) {
+                        // 定点数计算，系数放大2^16
+                        int cb = b - 128;
+                        int cr = c - 128;
+                        int r = a + ((91881 * cr + 32768) >> 16);
+                        int g = a - ((22554 * cb + 46802 * cr - 32768) >> 16);
+                        int bl = a + ((116130 * cb + 32768) >> 16);
+                        pixels[out++] = (byte) clamp(bl);
+                        pixels[out++] = (byte) clamp(g);
+                        pixels[out++] = (byte) clamp(r);
+                    } else {
+                        pixels[out++] = (byte) c;
+                        pixels[out++] = (byte) b;
+                        pixels[out++] = (byte) a;
+                    }
+                }
+            }
+            return image;
+        }
+
+        /**
+         * 取出分量放大到输出尺寸后的一行
+         */
+        private void upsampleRow(Component component, int size, int y, int outWidth, byte[] row) {
+            byte[] plane = component.plane;
+            int stride = component.stride;
+            int ratioH = Math.max(1, maxH * size / (component.h * component.sizeH));
+            int ratioV = Math.max(1, maxV * size / (component.v * component.sizeV));
+            int planeHeight = plane.length / stride;
+            int sy = Math.min(y / ratioV, planeHeight - 1);
+            if (ratioH == 1 && ratioV == 1) {
+                System.arraycopy(plane, sy * stride, row, 0, outWidth);
+                return;
+            }
+            if (ratioH != 2 || ratioV > 2) {
+                int line = sy * stride;
+                for (int x = 0; x < outWidth; x++) {
+                    row[x] = plane[line + Math.min(x / ratioH, stride - 1)];
+                }
+                return;
+            }
+            // 水平放大2倍，垂直不变或放大2倍，权重合计64
+            int near = sy * stride;
+            int far = near;
+            int weightNear = 16;
+            int weightFar = 0;
+            if (ratioV == 2) {
+                int neighbour = (y & 1) == 0 ? Math.max(0, sy - 1) : Math.min(planeHeight - 1, sy + 1);
+                far = neighbour * stride;
+                weightNear = 12;
+                weightFar = 4;
+            }
+            for (int x = 0; x < outWidth; x++) {
+                int sx = Math.min(x >> 1, stride - 1);
+                int nx = (x & 1) == 0 ? Math.max(0, sx - 1) : Math.min(stride - 1, sx + 1);
+                int value = weightNear * (3 * (plane[near + sx] & 0xFF) + (plane[near + nx] & 0xFF))
+                        + weightFar * (3 * (plane[far + sx] & 0xFF) + (plane[far + nx] & 0xFF));
+                row[x] = (byte) ((value + 32) >> 6);
+            }
+        }
+    }
+
+    /**
+     * 熵解码和反变换
+     */
+    private static class Scan {
+        final Header header;
+        final byte[] data;
+        final int[] coefficients = new int[64];
+        final float[] rows = new float[64];
+        int pos;
+        long bits;
+        int count;
+        boolean marker;
+
+        Scan(Header header) {
+            this.header = header;
+            this.data = header.data;
+            this.pos = header.scanStart;
+        }
+
+        void decode() throws IOException {
+            Component[] components = header.components;
+            int mcuWidth = 8 * header.maxH;
+            int mcuHeight = 8 * header.maxV;
+            int mcusPerLine = (header.width + mcuWidth - 1) / mcuWidth;
+            int mcusPerColumn = (header.height + mcuHeight - 1) / mcuHeight;
+            boolean single = components.length == 1;
+            for (Component component : components) {
+                if (single) {
+                    // 单分量扫描不交织，每个MCU只有一块
+                    int componentWidth = (header.width * component.h + header.maxH - 1) / header.maxH;
+                    int componentHeight = (header.height * component.v + header.maxV - 1) / header.maxV;
+                    component.blocksPerLine = (componentWidth + 7) / 8;
+                    component.blocksPerColumn = (componentHeight + 7) / 8;
+                } else {
+                    component.blocksPerLine = mcusPerLine * component.h;
+                    component.blocksPerColumn = mcusPerColumn * component.v;
+                }
+                component.stride = component.blocksPerLine * component.sizeH;
+                component.plane = new byte[component.stride * component.blocksPerColumn * component.sizeV];
+                component.predictor = 0;
+            }
+
+            int total = single ? components[0].blocksPerLine * components[0].blocksPerColumn
+                    : mcusPerLine * mcusPerColumn;
+            int restartInterval = header.restartInterval;
+            for (int mcu = 0; mcu < total; mcu++) {
+                if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+                    restart();
+                }
+                if (single) {
+                    Component component = components[0];
+                    int row = mcu / component.blocksPerLine;
+                    int col = mcu % component.blocksPerLine;
+                    decodeBlock(component, row, col);
+                    continue;
+                }
+                int mcuRow = mcu / mcusPerLine;
+                int mcuCol = mcu % mcusPerLine;
+                for (Component component : components) {
+                    for (int v = 0; v < component.v; v++) {
+                        for (int h = 0; h < component.h; h++) {
+                            decodeBlock(component, mcuRow * component.v + v, mcuCol * component.h + h);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 跳到下一个RST标记之后，重置直流预测值
+         */
+        private void restart() {
+            bits = 0;
+            count = 0;
+            marker = false;
+            while (pos + 1 < data.length) {
+                int next = data[pos + 1] & 0xFF;
+                if ((data[pos] & 0xFF) == 0xFF && next >= 0xD0 && next <= 0xD7) {
+                    pos += 2;
+                    break;
+                }
+                pos++;
+            }
+            for (Component component : header.components) {
+                component.predictor = 0;
+            }
+        }
+
+        private void decodeBlock(Component component, int blockRow, int blockCol) throws IOException {
+            int[] coef = coefficients;
+            int[] quant = header.quant[component.quantTable];
+            Huffman dc = header.dcTables[component.dcTable];
+            Huffman ac = header.acTables[component.acTable];
+
+            int s = decodeHuffman(dc);
+            component.predictor += receiveExtend(s);
+            coef[0] = component.predictor * quant[0];
+            boolean acZero = true;
+            for (int k = 1; k < 64; k++) {
+                int rs = decodeHuffman(ac);
+                int run = rs >> 4;
+                s = rs & 15;
+                if (s == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 15;
+                    continue;
+                }
+                k += run;
+                if (k > 63) {
+                    break;
+                }
+                int z = ZIGZAG[k];
+                coef[z] = receiveExtend(s) * quant[z];
+                acZero = false;
+            }
+
+            int width = component.sizeH;
+            int height = component.sizeV;
+            int offset = blockRow * height * component.stride + blockCol * width;
+            if (acZero) {
+                // 只有直流分量时整块为同一值
+                byte value = (byte) clamp(Math.round(coef[0] / 8f) + 128);
+                for (int y = 0; y < height; y++) {
+                    Arrays.fill(component.plane, offset + y * component.stride,
+                            offset + y * component.stride + width, value);
+                }
+            } else {
+                idct(component.plane, offset, component.stride, width, height);
+                Arrays.fill(coef, 0);
+            }
+            coef[0] = 0;
+        }
+
+        /**
+         * 取左上角 width x height 个系数做二维反变换，先行后列
+         */
+        private void idct(byte[] plane, int offset, int stride, int width, int height) {
+            int[] coef = coefficients;
+            float[] tmp = rows;
+            float[] th = IDCT_TABLES[width];
+            float[] tv = IDCT_TABLES[height];
+            for (int v = 0; v < height; v++) {
+                int row = v * 8;
+                boolean zero = true;
+                for (int u = 1; u < width; u++) {
+                    if (coef[row + u] != 0) {
+                        zero = false;
+                        break;
+                    }
+                }
+                if (zero) {
+                    float value = coef[row] * th[0];
+                    for (int x = 0; x < width; x++) {
+                        tmp[v * width + x] = value;
+                    }
+                    continue;
+                }
+                for (int x = 0; x < width; x++) {
+                    float sum = 0;
+                    for (int u = 0; u < width; u++) {
+                        sum += coef[row + u] * th[u * width + x];
+                    }
+                    tmp[v * width + x] = sum;
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    float sum = 128.5f;
+                    for (int v = 0; v < height; v++) {
+                        sum += tv[v * height + y] * tmp[v * width + x];
+                    }
+                    plane[offset + y * stride + x] = (byte) clamp((int) Math.floor(sum));
+                }
+            }
+        }
+
+        /**
+         * 补充位缓冲，跳过填充的0x00，遇到标记后以0补足
+         */
+        private void fill() {
+            while (count <= 56) {
+                int b = 0;
+                if (!marker && pos < data.length) {
+                    b = data[pos] & 0xFF;
+                    if (b == 0xFF) {
+                        int next = pos + 1 < data.length ? data[pos + 1] & 0xFF : EOI;
+                        if (next == 0) {
+                            pos += 2;
+                        } else {
+                            marker = true;
+                            b = 0;
+                        }
+                    } else {
+                        pos++;
+                    }
+                }
+                bits = (bits << 8) | b;
+                count += 8;
+            }
+        }
+
+        private int decodeHuffman(Huffman huffman) throws IOException {
+            if (count < 16) {
+                fill();
+            }
+            int entry = huffman.lookup[(int) (bits >>> (count - Huffman.LOOKAHEAD)) & ((1 << Huffman.LOOKAHEAD) - 1)];
+            if (entry != 0) {
+                count -= entry >> 8;
+                return entry & 0xFF;
+            }
+            for (int length = Huffman.LOOKAHEAD + 1; length <= 16; length++) {
+                int code = (int) (bits >>> (count - length)) & ((1 << length) - 1);
+                if (code <= huffman.maxCode[length]) {
+                    count -= length;
+                    return huffman.symbols[code + huffman.valueOffset[length]];
+                }
+            }
+            throw new IOException("Huffman编码错误");
+        }
+
+        private int receiveExtend(int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (count < length) {
+                fill();
+            }
+            int value = (int) (bits >>> (count - length)) & ((1 << length) - 1);
+            count -= length;
+            return value < 1 << (length - 1) ? value - (1 << length) + 1 : value;
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+}
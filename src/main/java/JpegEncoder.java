@@ -0,0 +1,130 @@
+package main.java;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * JPEG编码器
+ * 按质量和编码配置编码，设置了大小上限时改为搜索不超过上限的最高质量，
+ * 源文件的EXIF和XMP段写回输出文件，像素已是sRGB，不写回ICC段
+ */
+public class JpegEncoder implements ImageEncoder {
+    private static final ThreadLocal<ImageWriter> WRITERS = ThreadLocal.withInitial(() -> {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        return writers.hasNext() ? writers.next() : null;
+    });
+
+    private final float quality;
+    private final JpegProfile profile;
+    private final int maxFileSizeKb;
+    private final TargetSizeEncoder targetSizeEncoder;
+
+    /**
+     * @param quality 质量 (0.0-1.0)
+     * @param profile 编码配置
+     * @param maxFileSizeKb 文件大小上限（KB），0表示不限制
+     * @param targetSizeEncoder 限定大小时使用的搜索器，保存同一批次的搜索起点
+     */
+    public JpegEncoder(float quality, JpegProfile profile, int maxFileSizeKb, TargetSizeEncoder targetSizeEncoder) {
+        this.quality = quality;
+        this.profile = profile;
+        this.maxFileSizeKb = maxFileSizeKb;
+        this.targetSizeEncoder = targetSizeEncoder;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".jpg";
+    }
+
+    @Override
+    public boolean supportsAlpha() {
+        return false;
+    }
+
+    @Override
+    public void write(BufferedImage image, ImageMetadata metadata, OutputStream output) throws IOException {
+        byte[] data;
+        if (maxFileSizeKb > 0) {
+            // 元数据段在编码后插入，也计入大小限制
+            long budget = maxFileSizeKb * 1024L - metadata.getSegmentBytes();
+            data = targetSizeEncoder.encode(image, budget, profile).data;
+        } else {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            write(image, encoded, quality, profile);
+            data = encoded.toByteArray();
+        }
+        output.write(metadata.insertInto(data));
+    }
+
+    /**
+     * 编码JPEG图片，可控制质量和编码配置
+     * 每个线程复用同一个编码器，限定大小时的多次试编码不必反复创建
+     * @param image 不带透明通道的图片
+     * @param outputStream 输出流
+     * @param quality 质量 (0.0-1.0)
+     * @param profile 编码配置
+     */
+    static void write(BufferedImage image, OutputStream outputStream, float quality, JpegProfile profile)
+            throws IOException {
+        ImageWriter writer = WRITERS.get();
+        if (writer == null) {
+            throw new IOException("No JPEG writer found");
+        }
+
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        if (profile.isProgressive()) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        if (profile.isOptimizeHuffman() && param instanceof JPEGImageWriteParam) {
+            ((JPEGImageWriteParam) param).setOptimizeHuffmanTables(true);
+        }
+
+        // 默认元数据即4:2:0降采样，只有不降采样时才需要修改
+        IIOMetadata metadata = null;
+        if (!profile.isSubsampleChroma()) {
+            metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+            disableChromaSubsampling(metadata);
+        }
+
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(outputStream)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.reset();
+        }
+    }
+    
+    /**
+     * 把所有分量的采样因子设为1，即4:4:4
+     */
+    private static void disableChromaSubsampling(IIOMetadata metadata) throws IOException {
+        String format = "javax_imageio_jpeg_image_1.0";
+        Node root = metadata.getAsTree(format);
+        NodeList components = ((Element) root).getElementsByTagName("componentSpec");
+        for (int i = 0; i < components.getLength(); i++) {
+            Element component = (Element) components.item(i);
+            component.setAttribute("HsamplingFactor", "1");
+            component.setAttribute("VsamplingFactor", "1");
+        }
+        metadata.setFromTree(format, root);
+    }
+}
@@ -0,0 +1,48 @@
+package main.java;
+
+/**
+ * JPEG编码配置枚举
+ * 在编码速度和输出体积之间取舍，质量仍由JPEG质量单独控制
+ */
+public enum JpegProfile {
+    BASELINE("基线（最快）", false, false, true),         // 标准哈夫曼表，适合预览和临时输出
+    OPTIMIZED("优化哈夫曼表", false, true, true),          // 多一遍统计，体积更小，解码兼容性与基线相同
+    WEB("网页（渐进式）", true, true, true),              // 渐进式加载，适合网页发布
+    HIGH_FIDELITY("高保真（不降采样色度）", false, true, false); // 4:4:4，保留红色文字等细节
+
+    private final String displayName;
+    private final boolean progressive;
+    private final boolean optimizeHuffman;
+    private final boolean subsampleChroma;
+
+    JpegProfile(String displayName, boolean progressive, boolean optimizeHuffman, boolean subsampleChroma) {
+        this.displayName = displayName;
+        this.progressive = progressive;
+        this.optimizeHuffman = optimizeHuffman;
+        this.subsampleChroma = subsampleChroma;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public boolean isOptimizeHuffman() {
+        return optimizeHuffman;
+    }
+
+    /**
+     * @return true表示色度按4:2:0降采样，false表示4:4:4
+     */
+    public boolean isSubsampleChroma() {
+        return subsampleChroma;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
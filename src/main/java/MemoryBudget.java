@@ -0,0 +1,113 @@
+package main.java;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * 解码内存预算
+ * 按字节数发放许可的信号量（内部以KB为单位），解码前按图片头中的尺寸估算所需内存并申请许可，
+ * 大图同时解码的数量少，小图同时解码的数量多，总占用不超过预算。
+ * 单张超过整个预算的图片按整个预算申请，独占时仍然可以处理
+ */
+public class MemoryBudget {
+    private static volatile MemoryBudget shared = new MemoryBudget(Runtime.getRuntime().maxMemory() / 2);
+
+    private final long maxBytes;
+    private final int maxPermits;
+    // 公平模式，大图不会被源源不断的小图一直挤在后面
+    private final Semaphore permits;
+
+    /**
+     * 已获得的许可，关闭时归还
+     */
+    public final class Permit implements AutoCloseable {
+        private final int count;
+        private boolean released = false;
+
+        private Permit(int count) {
+            this.count = count;
+        }
+
+        /**
+         * @return 许可对应的字节数
+         */
+        public long getBytes() {
+            return (long) count << 10;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                permits.release(count);
+            }
+        }
+    }
+
+    /**
+     * @param maxBytes 预算字节数
+     */
+    public MemoryBudget(long maxBytes) {
+        this.maxPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes >> 10));
+        this.maxBytes = (long) maxPermits << 10;
+        this.permits = new Semaphore(maxPermits, true);
+    }
+
+    /**
+     * 获取进程内共用的预算，默认为最大堆的一半，另一半留给解码缓存和界面
+     * @return 共用预算
+     */
+    public static MemoryBudget getShared() {
+        return shared;
+    }
+
+    /**
+     * 替换共用预算，应在开始导出前调用，已发放的许可仍归还给原预算
+     * @param maxBytes 预算字节数
+     */
+    public static void configureShared(long maxBytes) {
+        shared = new MemoryBudget(maxBytes);
+    }
+
+    /**
+     * 申请许可，预算不足时等待其他图片处理完成
+     * @param bytes 需要的字节数
+     * @return 许可，使用完后关闭
+     */
+    public Permit acquire(long bytes) {
+        int count = toPermits(bytes);
+        permits.acquireUninterruptibly(count);
+        return new Permit(count);
+    }
+
+    /**
+     * 尝试立即申请许可
+     * @param bytes 需要的字节数
+     * @return 许可，预算不足时返回null
+     */
+    public Permit tryAcquire(long bytes) {
+        int count = toPermits(bytes);
+        return permits.tryAcquire(count) ? new Permit(count) : null;
+    }
+
+    private int toPermits(long bytes) {
+        return (int) Math.max(1, Math.min(maxPermits, (bytes + 1023) >> 10));
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return 尚未发放的字节数
+     */
+    public long getAvailableBytes() {
+        return (long) permits.availablePermits() << 10;
+    }
+
+    /**
+     * @return 正在等待许可的线程数
+     */
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+}
@@ -7,6 +7,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,15 +23,19 @@ public class PhotoWatermarkApp extends JFrame {
     private JPanel imageListPanel;
     private JPanel previewPanel;
     private JPanel controlPanel;
+    private JComboBox<String> fontCombo;
+    private JMenu templateMenu;
+    private boolean firstPaintRecorded = false;
+    private boolean exporting = false;
+    private final DefaultListModel<String> layerListModel = new DefaultListModel<>();
     
     private List<File> importedImages = new ArrayList<>();
     private File currentPreviewImage;
     
     public PhotoWatermarkApp() {
-        // 初始化组件
+        // 初始化组件，配置管理器涉及磁盘读取，在后台加载
         imageProcessor = new ImageProcessor();
         watermarkManager = new WatermarkManager();
-        configManager = new ConfigManager();
         
         // 设置窗口属性
         setTitle("照片水印工具");
@@ -43,13 +48,74 @@ public class PhotoWatermarkApp extends JFrame {
         createImageListPanel();
         createPreviewPanel();
         createControlPanel();
-        
-        // 加载上次的配置
-        loadLastConfig();
+        StartupMetrics.mark("界面创建完成");
         
         // 显示窗口
         setLocationRelativeTo(null);
         setVisible(true);
+        
+        // 字体列表、模板和上次的配置在后台加载
+        loadInBackground();
+    }
+    
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!firstPaintRecorded) {
+            firstPaintRecorded = true;
+            StartupMetrics.mark("首次绘制");
+        }
+    }
+    
+    /**
+     * 在后台线程加载耗时资源，完成后在事件线程中更新界面
+     */
+    private void loadInBackground() {
+        new SwingWorker<String[], Void>() {
+            private ConfigManager loadedConfig;
+            private WatermarkSettings lastSettings;
+            
+            @Override
+            protected String[] doInBackground() {
+                loadedConfig = new ConfigManager();
+                lastSettings = loadedConfig.loadLastSettings();
+                StartupMetrics.mark("配置加载完成");
+                String[] fonts = GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+                StartupMetrics.mark("字体列表加载完成");
+                return fonts;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    configManager = loadedConfig;
+                    if (lastSettings != null) {
+                        watermarkManager.applySettings(lastSettings);
+                        refreshLayerList();
+                    }
+                    templateMenu.setEnabled(configManager != null);
+                    populateFonts(get());
+                    updatePreview();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                StartupMetrics.mark("后台加载完成");
+            }
+        }.execute();
+    }
+    
+    /**
+     * 填充字体下拉框并选中当前设置的字体
+     * @param fonts 系统字体名称
+     */
+    private void populateFonts(String[] fonts) {
+        String current = watermarkManager.getSettings().getFontName();
+        DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>(fonts);
+        if (model.getIndexOf(current) < 0) {
+            model.insertElementAt(current, 0);
+        }
+        model.setSelectedItem(current);
+        fontCombo.setModel(model);
     }
     
     private void createMenuBar() {
@@ -74,7 +140,7 @@ public class PhotoWatermarkApp extends JFrame {
         fileMenu.add(exitItem);
         
         // 模板菜单
-        JMenu templateMenu = new JMenu("模板");
+        templateMenu = new JMenu("模板");
         JMenuItem saveTemplateItem = new JMenuItem("保存当前模板");
         JMenuItem loadTemplateItem = new JMenuItem("加载模板");
         JMenuItem manageTemplateItem = new JMenuItem("管理模板");
@@ -86,6 +152,8 @@ public class PhotoWatermarkApp extends JFrame {
         templateMenu.add(saveTemplateItem);
         templateMenu.add(loadTemplateItem);
         templateMenu.add(manageTemplateItem);
+        // 配置管理器在后台加载完成前不可用
+        templateMenu.setEnabled(false);
         
         // 帮助菜单
         JMenu helpMenu = new JMenu("帮助");
@@ -170,13 +238,36 @@ public class PhotoWatermarkApp extends JFrame {
         // 字体设置
         JPanel fontPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         fontPanel.add(new JLabel("字体:"));
-        JComboBox<String> fontCombo = new JComboBox<>(GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames());
+        // 枚举系统字体较慢，先只显示当前字体，完整列表在后台加载
+        fontCombo = new JComboBox<>(new String[]{watermarkManager.getSettings().getFontName()});
+        fontCombo.addActionListener(e -> {
+            Object selected = fontCombo.getSelectedItem();
+            if (selected != null && !selected.equals(watermarkManager.getSettings().getFontName())) {
+                watermarkManager.getSettings().setFontName(selected.toString());
+                updatePreview();
+            }
+        });
         fontPanel.add(fontCombo);
         JSpinner sizeSpinner = new JSpinner(new SpinnerNumberModel(24, 8, 72, 1));
+        sizeSpinner.addChangeListener(e -> {
+            watermarkManager.getSettings().setFontSize((Integer) sizeSpinner.getValue());
+            updatePreview();
+        });
         fontPanel.add(new JLabel("大小:"));
         fontPanel.add(sizeSpinner);
         textPanel.add(fontPanel);
         
+        // 相对字号，仅在相对尺寸模式下生效
+        JPanel relativeTextPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        relativeTextPanel.add(new JLabel("相对字号(短边%):"));
+        JSpinner relativeTextSpinner = new JSpinner(new SpinnerNumberModel(5.0, 0.5, 50.0, 0.5));
+        relativeTextSpinner.addChangeListener(e -> {
+            watermarkManager.getSettings().setRelativeTextSize(((Number) relativeTextSpinner.getValue()).floatValue());
+            updatePreview();
+        });
+        relativeTextPanel.add(relativeTextSpinner);
+        textPanel.add(relativeTextPanel);
+        
         // 字体样式
         JPanel stylePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JCheckBox boldCheck = new JCheckBox("粗体");
@@ -220,6 +311,49 @@ public class PhotoWatermarkApp extends JFrame {
         opacityPanel.add(opacitySlider);
         textPanel.add(opacityPanel);
         
+        // 描边、阴影和外发光，随图章缓存，不增加每张图片的处理时间
+        JPanel outlinePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        outlinePanel.add(new JLabel("描边宽度:"));
+        JSpinner outlineSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 20, 1));
+        outlineSpinner.addChangeListener(e -> {
+            watermarkManager.getSettings().setOutlineWidth((Integer) outlineSpinner.getValue());
+            updatePreview();
+        });
+        outlinePanel.add(outlineSpinner);
+        outlinePanel.add(createEffectColorButton("描边颜色", Color.WHITE,
+                color -> watermarkManager.getSettings().setOutlineColor(color)));
+        textPanel.add(outlinePanel);
+        
+        JPanel shadowPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JCheckBox shadowCheck = new JCheckBox("阴影");
+        shadowCheck.addActionListener(e -> {
+            watermarkManager.getSettings().setEnableShadow(shadowCheck.isSelected());
+            updatePreview();
+        });
+        shadowPanel.add(shadowCheck);
+        shadowPanel.add(new JLabel("模糊:"));
+        JSpinner shadowBlurSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 30, 1));
+        shadowBlurSpinner.addChangeListener(e -> {
+            watermarkManager.getSettings().setShadowBlur((Integer) shadowBlurSpinner.getValue());
+            updatePreview();
+        });
+        shadowPanel.add(shadowBlurSpinner);
+        shadowPanel.add(createEffectColorButton("阴影颜色", Color.WHITE,
+                color -> watermarkManager.getSettings().setShadowColor(color)));
+        textPanel.add(shadowPanel);
+        
+        JPanel glowPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        glowPanel.add(new JLabel("外发光半径:"));
+        JSpinner glowSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 40, 1));
+        glowSpinner.addChangeListener(e -> {
+            watermarkManager.getSettings().setGlowRadius((Integer) glowSpinner.getValue());
+            updatePreview();
+        });
+        glowPanel.add(glowSpinner);
+        glowPanel.add(createEffectColorButton("发光颜色", Color.WHITE,
+                color -> watermarkManager.getSettings().setGlowColor(color)));
+        textPanel.add(glowPanel);
+        
         // 图片水印设置面板
         JPanel imageWmPanel = new JPanel();
         imageWmPanel.setLayout(new BoxLayout(imageWmPanel, BoxLayout.Y_AXIS));
@@ -263,6 +397,17 @@ public class PhotoWatermarkApp extends JFrame {
         imageScalePanel.add(scaleSlider);
         imageWmPanel.add(imageScalePanel);
         
+        // 相对大小，仅在相对尺寸模式下生效
+        JPanel relativeImagePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        relativeImagePanel.add(new JLabel("相对大小(短边%):"));
+        JSpinner relativeImageSpinner = new JSpinner(new SpinnerNumberModel(20.0, 1.0, 100.0, 1.0));
+        relativeImageSpinner.addChangeListener(e -> {
+            watermarkManager.getSettings().setRelativeImageSize(((Number) relativeImageSpinner.getValue()).floatValue());
+            updatePreview();
+        });
+        relativeImagePanel.add(relativeImageSpinner);
+        imageWmPanel.add(relativeImagePanel);
+        
         JPanel imageOpacityPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         imageOpacityPanel.add(new JLabel("透明度:"));
         JSlider imageOpacitySlider = new JSlider(0, 100, 70);
@@ -311,6 +456,45 @@ public class PhotoWatermarkApp extends JFrame {
         }
         positionPanel.add(presetPanel);
         
+        // 平铺模式：单个图案单元斜向交错铺满整张图片
+        JPanel tilePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JCheckBox tiledCheck = new JCheckBox("平铺水印");
+        // 自动位置：在预设位置附近选择最平坦的区域，文字颜色对比度不足时改用黑色或白色
+        JCheckBox autoCheck = new JCheckBox("自动避开繁杂区域");
+        JSlider tileSpacingSlider = new JSlider(0, 200, 50);
+        tileSpacingSlider.setPreferredSize(new Dimension(140, tileSpacingSlider.getPreferredSize().height));
+        tileSpacingSlider.setEnabled(false);
+        tiledCheck.addActionListener(e -> {
+            if (tiledCheck.isSelected()) {
+                autoCheck.setSelected(false);
+            }
+            watermarkManager.getSettings().setPlacementMode(
+                    tiledCheck.isSelected() ? PlacementMode.TILED : PlacementMode.FIXED);
+            tileSpacingSlider.setEnabled(tiledCheck.isSelected());
+            updatePreview();
+        });
+        autoCheck.addActionListener(e -> {
+            if (autoCheck.isSelected()) {
+                tiledCheck.setSelected(false);
+                tileSpacingSlider.setEnabled(false);
+            }
+            watermarkManager.getSettings().setPlacementMode(
+                    autoCheck.isSelected() ? PlacementMode.AUTO : PlacementMode.FIXED);
+            updatePreview();
+        });
+        tileSpacingSlider.addChangeListener(e -> {
+            watermarkManager.getSettings().setTileSpacing(tileSpacingSlider.getValue());
+            updatePreview();
+        });
+        tilePanel.add(tiledCheck);
+        tilePanel.add(new JLabel("间距:"));
+        tilePanel.add(tileSpacingSlider);
+        positionPanel.add(tilePanel);
+        
+        JPanel autoPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        autoPanel.add(autoCheck);
+        positionPanel.add(autoPanel);
+        
         JPanel rotationPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         rotationPanel.add(new JLabel("旋转角度:"));
         JSlider rotationSlider = new JSlider(0, 360, 0);
@@ -325,6 +509,45 @@ public class PhotoWatermarkApp extends JFrame {
         rotationPanel.add(rotationSlider);
         positionPanel.add(rotationPanel);
         
+        // 尺寸模式：相对尺寸下混合分辨率的批量图片水印比例一致
+        JPanel sizeModePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JCheckBox relativeSizeCheck = new JCheckBox("按图片短边比例缩放水印");
+        relativeSizeCheck.addActionListener(e -> {
+            watermarkManager.getSettings().setSizeMode(
+                    relativeSizeCheck.isSelected() ? SizeMode.RELATIVE : SizeMode.ABSOLUTE);
+            updatePreview();
+        });
+        sizeModePanel.add(relativeSizeCheck);
+        positionPanel.add(sizeModePanel);
+        
+        // 附加图层：把当前水印保存为图层后继续编辑下一个，导出时所有图层一起叠加
+        JPanel layerPanel = new JPanel(new BorderLayout());
+        layerPanel.setBorder(BorderFactory.createTitledBorder("附加图层"));
+        JList<String> layerList = new JList<>(layerListModel);
+        layerList.setVisibleRowCount(4);
+        layerPanel.add(new JScrollPane(layerList), BorderLayout.CENTER);
+        JPanel layerButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton addLayerButton = new JButton("添加当前水印为图层");
+        addLayerButton.addActionListener(e -> {
+            WatermarkSettings layer = watermarkManager.getSettings().copy();
+            layer.getLayers().clear();
+            watermarkManager.getSettings().getLayers().add(layer);
+            refreshLayerList();
+            updatePreview();
+        });
+        JButton removeLayerButton = new JButton("删除所选图层");
+        removeLayerButton.addActionListener(e -> {
+            int index = layerList.getSelectedIndex();
+            if (index >= 0) {
+                watermarkManager.getSettings().getLayers().remove(index);
+                refreshLayerList();
+                updatePreview();
+            }
+        });
+        layerButtons.add(addLayerButton);
+        layerButtons.add(removeLayerButton);
+        layerPanel.add(layerButtons, BorderLayout.SOUTH);
+        
         // 导出设置
         JPanel exportPanel = new JPanel();
         exportPanel.setLayout(new BoxLayout(exportPanel, BoxLayout.Y_AXIS));
@@ -334,13 +557,46 @@ public class PhotoWatermarkApp extends JFrame {
         formatPanel.add(new JLabel("输出格式:"));
         JRadioButton jpegRadio = new JRadioButton("JPEG", true);
         JRadioButton pngRadio = new JRadioButton("PNG");
+        JRadioButton qoiRadio = new JRadioButton("QOI");
+        JRadioButton tiffRadio = new JRadioButton("TIFF");
         ButtonGroup formatGroup = new ButtonGroup();
         formatGroup.add(jpegRadio);
         formatGroup.add(pngRadio);
+        formatGroup.add(qoiRadio);
+        formatGroup.add(tiffRadio);
+        jpegRadio.addActionListener(e -> imageProcessor.setOutputFormat("jpeg"));
+        pngRadio.addActionListener(e -> imageProcessor.setOutputFormat("png"));
+        qoiRadio.addActionListener(e -> imageProcessor.setOutputFormat("qoi"));
+        tiffRadio.addActionListener(e -> imageProcessor.setOutputFormat("tiff"));
         formatPanel.add(jpegRadio);
         formatPanel.add(pngRadio);
+        formatPanel.add(qoiRadio);
+        formatPanel.add(tiffRadio);
         exportPanel.add(formatPanel);
         
+        // PNG压缩级别和行过滤方式，压缩在多个核心上并行进行
+        JPanel pngPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        pngPanel.add(new JLabel("PNG压缩级别:"));
+        JSpinner pngLevelSpinner = new JSpinner(new SpinnerNumberModel(imageProcessor.getPngCompressionLevel(), 0, 9, 1));
+        pngLevelSpinner.addChangeListener(e -> imageProcessor.setPngCompressionLevel((Integer) pngLevelSpinner.getValue()));
+        pngPanel.add(pngLevelSpinner);
+        pngPanel.add(new JLabel("过滤:"));
+        JComboBox<PngFilter> pngFilterCombo = new JComboBox<>(PngFilter.values());
+        pngFilterCombo.setSelectedItem(imageProcessor.getPngFilter());
+        pngFilterCombo.addActionListener(e -> imageProcessor.setPngFilter((PngFilter) pngFilterCombo.getSelectedItem()));
+        pngPanel.add(pngFilterCombo);
+        exportPanel.add(pngPanel);
+        
+        // TIFF压缩方式，用于快速的中间存档输出
+        JPanel tiffPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        tiffPanel.add(new JLabel("TIFF压缩:"));
+        JComboBox<TiffEncoder.Compression> tiffCombo = new JComboBox<>(TiffEncoder.Compression.values());
+        tiffCombo.setSelectedItem(imageProcessor.getTiffCompression());
+        tiffCombo.addActionListener(e -> imageProcessor.setTiffCompression(
+                (TiffEncoder.Compression) tiffCombo.getSelectedItem()));
+        tiffPanel.add(tiffCombo);
+        exportPanel.add(tiffPanel);
+        
         JPanel qualityPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         qualityPanel.add(new JLabel("JPEG质量:"));
         JSlider qualitySlider = new JSlider(0, 100, 90);
@@ -348,9 +604,40 @@ public class PhotoWatermarkApp extends JFrame {
         qualitySlider.setMinorTickSpacing(5);
         qualitySlider.setPaintTicks(true);
         qualitySlider.setPaintLabels(true);
+        qualitySlider.addChangeListener(e -> imageProcessor.setJpegQuality(qualitySlider.getValue() / 100f));
         qualityPanel.add(qualitySlider);
         exportPanel.add(qualityPanel);
         
+        // JPEG编码配置：在编码速度和文件体积之间取舍
+        JPanel profilePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        profilePanel.add(new JLabel("编码配置:"));
+        JComboBox<JpegProfile> profileCombo = new JComboBox<>(JpegProfile.values());
+        profileCombo.setSelectedItem(imageProcessor.getJpegProfile());
+        profileCombo.addActionListener(e -> imageProcessor.setJpegProfile((JpegProfile) profileCombo.getSelectedItem()));
+        profilePanel.add(profileCombo);
+        exportPanel.add(profilePanel);
+        
+        // 文件大小上限：设置后自动选择不超过上限的最高质量
+        JPanel maxSizePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        maxSizePanel.add(new JLabel("大小上限(KB，0为不限):"));
+        JSpinner maxSizeSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 100000, 50));
+        maxSizeSpinner.addChangeListener(e -> {
+            int maxKb = (Integer) maxSizeSpinner.getValue();
+            imageProcessor.setMaxFileSizeKb(maxKb);
+            qualitySlider.setEnabled(maxKb == 0);
+        });
+        maxSizePanel.add(maxSizeSpinner);
+        exportPanel.add(maxSizePanel);
+        
+        // 输出长边上限：JPEG源文件在解码阶段直接缩小，不必先解码原尺寸
+        JPanel maxDimensionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        maxDimensionPanel.add(new JLabel("长边上限(像素，0为不限):"));
+        JSpinner maxDimensionSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 100000, 100));
+        maxDimensionSpinner.addChangeListener(e ->
+                imageProcessor.setMaxDimension((Integer) maxDimensionSpinner.getValue()));
+        maxDimensionPanel.add(maxDimensionSpinner);
+        exportPanel.add(maxDimensionPanel);
+        
         JPanel namingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         namingPanel.add(new JLabel("命名规则:"));
         JRadioButton originalRadio = new JRadioButton("保留原名", true);
@@ -410,6 +697,7 @@ public class PhotoWatermarkApp extends JFrame {
         controlPanel.add(textPanel);
         controlPanel.add(imageWmPanel);
         controlPanel.add(positionPanel);
+        controlPanel.add(layerPanel);
         controlPanel.add(exportPanel);
         controlPanel.add(actionPanel);
         
@@ -480,10 +768,15 @@ public class PhotoWatermarkApp extends JFrame {
             JPanel imageItemPanel = new JPanel(new BorderLayout());
             imageItemPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
             
-            // 创建缩略图
-            ImageIcon thumbnail = imageProcessor.createThumbnail(file, 150, 100);
-            JLabel imageLabel = new JLabel(thumbnail);
+            // 缩略图在后台创建，完成后更新标签
+            JLabel imageLabel = new JLabel("加载中...", JLabel.CENTER);
+            imageLabel.setPreferredSize(new Dimension(150, 100));
             imageLabel.setBorder(BorderFactory.createEtchedBorder());
+            imageProcessor.createThumbnailAsync(file, 150, 100).thenAccept(thumbnail ->
+                    SwingUtilities.invokeLater(() -> {
+                        imageLabel.setText(thumbnail == null ? "无法加载" : null);
+                        imageLabel.setIcon(thumbnail);
+                    }));
             
             JLabel nameLabel = new JLabel(file.getName(), JLabel.CENTER);
             
@@ -516,15 +809,23 @@ public class PhotoWatermarkApp extends JFrame {
                 // 清除预览面板
                 previewPanel.removeAll();
                 
-                // 获取原始图像
-                BufferedImage originalImage = imageProcessor.loadImage(currentPreviewImage);
+                // 获取原始图像，水印按图片短边的比例计算时只需解码到预览区域的大小
+                BufferedImage originalImage;
+                if (watermarkManager.getSettings().getSizeMode() == SizeMode.RELATIVE
+                        && previewPanel.getWidth() > 0 && previewPanel.getHeight() > 0) {
+                    originalImage = imageProcessor.loadImage(currentPreviewImage,
+                            previewPanel.getWidth(), previewPanel.getHeight());
+                } else {
+                    originalImage = imageProcessor.loadImage(currentPreviewImage);
+                }
                 if (originalImage == null) {
                     System.err.println("无法加载图像: " + currentPreviewImage.getPath());
                     return;
                 }
                 
-                // 获取带水印的预览图像
-                BufferedImage previewImage = watermarkManager.applyWatermark(originalImage);
+                // 获取带水印的预览图像，按EXIF方向摆正
+                int orientation = ImageMetadata.read(currentPreviewImage).getOrientation();
+                BufferedImage previewImage = watermarkManager.applyWatermark(originalImage, true, orientation);
                 if (previewImage == null) {
                     System.err.println("应用水印失败");
                     return;
@@ -552,11 +853,48 @@ public class PhotoWatermarkApp extends JFrame {
         }
     }
     
+    /**
+     * 按当前设置刷新附加图层列表
+     */
+    private void refreshLayerList() {
+        layerListModel.clear();
+        for (WatermarkSettings layer : watermarkManager.getSettings().getLayers()) {
+            String content = layer.getType() == WatermarkType.TEXT
+                    ? "文本: " + layer.getText()
+                    : "图片: " + (layer.getWatermarkImage() != null ? layer.getWatermarkImage().getName() : "未选择");
+            layerListModel.addElement(content + " (" + layer.getPositionX() + "%, " + layer.getPositionY() + "%)");
+        }
+    }
+    
+    /**
+     * 创建效果颜色按钮，按钮背景显示当前颜色
+     * @param title 按钮文字和颜色对话框标题
+     * @param initial 初始颜色
+     * @param setter 选择颜色后写入设置
+     */
+    private JButton createEffectColorButton(String title, Color initial, java.util.function.Consumer<Color> setter) {
+        JButton button = new JButton(title);
+        button.setBackground(initial);
+        button.addActionListener(e -> {
+            Color newColor = JColorChooser.showDialog(PhotoWatermarkApp.this, title, button.getBackground());
+            if (newColor != null) {
+                button.setBackground(newColor);
+                setter.accept(newColor);
+                updatePreview();
+            }
+        });
+        return button;
+    }
+    
     private void exportImages() {
         if (importedImages.isEmpty()) {
             JOptionPane.showMessageDialog(this, "没有可导出的图片", "错误", JOptionPane.ERROR_MESSAGE);
             return;
         }
+        if (exporting) {
+            JOptionPane.showMessageDialog(this, "已有导出任务正在进行", "提示", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
         
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
@@ -584,28 +922,84 @@ public class PhotoWatermarkApp extends JFrame {
                 }
             }
             
-            // 执行导出
-            for (File image : importedImages) {
-                Image watermarkedImage = watermarkManager.applyWatermark(
-                        imageProcessor.loadImage(image));
-                
-                // 获取输出文件名
-                String outputFileName = imageProcessor.getOutputFileName(image.getName());
-                File outputFile = new File(outputDir, outputFileName);
-                
-                // 保存图片
-                imageProcessor.saveImage(watermarkedImage, outputFile);
+            // 输出目录中有上次未完成的任务时询问是否继续
+            ExportJob job = null;
+            ExportJob unfinished = ExportJob.open(outputDir);
+            if (unfinished != null) {
+                int pending = unfinished.getPending().size();
+                int choice = JOptionPane.showConfirmDialog(this,
+                        "该目录中有未完成的导出任务（共 " + unfinished.getTotal() + " 张，剩余 " + pending + " 张）。\n" +
+                        "是否继续该任务？选择\"否\"将放弃该任务并按当前设置导出。",
+                        "继续导出", JOptionPane.YES_NO_CANCEL_OPTION);
+                if (choice == JOptionPane.YES_OPTION) {
+                    job = unfinished;
+                } else if (choice == JOptionPane.NO_OPTION) {
+                    unfinished.discard();
+                } else {
+                    return;
+                }
             }
-            
-            JOptionPane.showMessageDialog(this, "图片导出完成", "成功", JOptionPane.INFORMATION_MESSAGE);
+            if (job == null) {
+                try {
+                    job = ExportJob.create(outputDir, importedImages,
+                            watermarkManager.getSettings(), imageProcessor.getOutputOptions());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(this, "无法创建导出任务: " + e.getMessage(),
+                            "错误", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+            runExport(job);
         }
     }
     
+    /**
+     * 在后台执行导出并显示导出状态面板
+     * 导出器使用任务中保存的设置快照，导出过程中修改界面上的设置不影响本次导出
+     */
+    private void runExport(ExportJob job) {
+        BatchExporter exporter = job.createExporter(watermarkManager);
+        ExportDashboard dashboard = new ExportDashboard(this, exporter.getStats());
+        exporting = true;
+        new SwingWorker<BatchExporter.Result, Void>() {
+            @Override
+            protected BatchExporter.Result doInBackground() {
+                // 执行导出，未变化的图片会被跳过
+                return exporter.export(job);
+            }
+            
+            @Override
+            protected void done() {
+                exporting = false;
+                dashboard.finish();
+                try {
+                    BatchExporter.Result exportResult = get();
+                    JOptionPane.showMessageDialog(PhotoWatermarkApp.this,
+                            "图片导出完成\n" +
+                            "导出: " + exportResult.exported + " 张\n" +
+                            "跳过(未变化): " + exportResult.skipped + " 张\n" +
+                            "失败: " + exportResult.failed + " 张",
+                            "成功", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(PhotoWatermarkApp.this, "导出失败: " + e.getMessage(),
+                            "错误", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+        dashboard.start();
+    }
+    
     private void saveCurrentTemplate() {
         String templateName = JOptionPane.showInputDialog(this, "请输入模板名称:");
         if (templateName != null && !templateName.trim().isEmpty()) {
-            configManager.saveTemplate(templateName, watermarkManager.getCurrentSettings());
-            JOptionPane.showMessageDialog(this, "模板保存成功", "成功", JOptionPane.INFORMATION_MESSAGE);
+            if (configManager.saveTemplate(templateName, watermarkManager.getCurrentSettings())) {
+                JOptionPane.showMessageDialog(this, "模板保存成功", "成功", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, "模板保存失败，模板文件可能由更新版本创建", "错误",
+                        JOptionPane.ERROR_MESSAGE);
+            }
         }
     }
     
@@ -624,6 +1018,7 @@ public class PhotoWatermarkApp extends JFrame {
         if (selectedTemplate != null) {
             WatermarkSettings settings = configManager.loadTemplate(selectedTemplate);
             watermarkManager.applySettings(settings);
+            refreshLayerList();
             updatePreview();
             JOptionPane.showMessageDialog(this, "模板加载成功", "成功", JOptionPane.INFORMATION_MESSAGE);
         }
@@ -634,13 +1029,6 @@ public class PhotoWatermarkApp extends JFrame {
         // 可以列出所有模板，并提供删除功能
     }
     
-    private void loadLastConfig() {
-        WatermarkSettings lastSettings = configManager.loadLastSettings();
-        if (lastSettings != null) {
-            watermarkManager.applySettings(lastSettings);
-        }
-    }
-    
     private void showAboutDialog() {
         JOptionPane.showMessageDialog(this,
                 "照片水印工具 v1.0\n" +
@@ -650,6 +1038,7 @@ public class PhotoWatermarkApp extends JFrame {
     }
     
     public static void main(String[] args) {
+        StartupMetrics.mark("进入main");
         try {
             // 设置本地系统外观
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -0,0 +1,85 @@
+package main.java;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流水线线程池
+ * 文件读写等阻塞I/O在虚拟线程中执行，慢速网络存储上可以同时发起大量请求；
+ * 解码、加水印、编码等计算任务在与核心数相同的平台线程池中执行，避免过度占用CPU
+ */
+public final class PipelineExecutors {
+    private static final ExecutorService IO = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("pipeline-io-", 0).factory());
+    private static final ThreadPoolExecutor CPU = new ThreadPoolExecutor(
+            Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(),
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new CpuThreadFactory());
+
+    private PipelineExecutors() {
+    }
+
+    /**
+     * 获取I/O线程池，每个任务一个虚拟线程
+     * @return I/O线程池
+     */
+    public static ExecutorService io() {
+        return IO;
+    }
+
+    /**
+     * 获取计算线程池，线程数默认等于CPU核心数
+     * @return 计算线程池
+     */
+    public static ExecutorService cpu() {
+        return CPU;
+    }
+
+    /**
+     * @return 计算线程池的线程数
+     */
+    public static int getCpuThreads() {
+        return CPU.getMaximumPoolSize();
+    }
+
+    /**
+     * 调整计算线程池的线程数，导出过程中也可以调整，已开始的任务不受影响
+     * @param threads 线程数，至少为1
+     */
+    public static synchronized void setCpuThreads(int threads) {
+        threads = Math.max(1, threads);
+        // 核心线程数不能大于最大线程数，调整顺序取决于增减方向
+        if (threads > CPU.getMaximumPoolSize()) {
+            CPU.setMaximumPoolSize(threads);
+            CPU.setCorePoolSize(threads);
+        } else {
+            CPU.setCorePoolSize(threads);
+            CPU.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * @return 正在执行计算任务的线程数
+     */
+    public static int getActiveCpuThreads() {
+        return CPU.getActiveCount();
+    }
+
+    /**
+     * 计算线程使用守护线程，不阻止程序退出
+     */
+    private static class CpuThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pipeline-cpu-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
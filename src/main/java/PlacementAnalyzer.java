@@ -0,0 +1,242 @@
+package main.java;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+
+/**
+ * 水印位置分析类
+ * 把图片缩小为长边 GRID 个格子的亮度图（每格取少量采样的平均值），
+ * 建立亮度、亮度平方和相邻亮度差的积分图，任意矩形区域的方差和边缘密度都可以O(1)求出，
+ * 据此在候选位置中选出最平坦的区域放置水印，并按区域亮度选择文字颜色
+ */
+public class PlacementAnalyzer {
+    // 亮度图长边的格子数
+    private static final int GRID = 128;
+    // 每个格子在每个方向上的最多采样数
+    private static final int SAMPLES = 4;
+    // 边缘密度相对于标准差的权重
+    private static final double EDGE_WEIGHT = 2.0;
+    // 偏离用户设定位置每个百分点的惩罚，分数相近时保持在设定位置附近
+    private static final double DISTANCE_WEIGHT = 0.05;
+    // 文字与背景的最小对比度（WCAG定义），低于该值时改用黑色或白色
+    private static final double MIN_CONTRAST = 3.0;
+
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int gridWidth;
+    private final int gridHeight;
+    private final double cellSize;
+    // (gridWidth + 1) x (gridHeight + 1) 的积分图，第0行和第0列为0
+    private final long[] sum;
+    private final long[] sumSquares;
+    private final long[] edges;
+
+    private PlacementAnalyzer(BufferedImage image) {
+        imageWidth = image.getWidth();
+        imageHeight = image.getHeight();
+        cellSize = Math.max(1.0, (double) Math.max(imageWidth, imageHeight) / GRID);
+        gridWidth = Math.max(1, (int) Math.ceil(imageWidth / cellSize));
+        gridHeight = Math.max(1, (int) Math.ceil(imageHeight / cellSize));
+        int[] luminance = sampleLuminance(image);
+
+        int stride = gridWidth + 1;
+        sum = new long[stride * (gridHeight + 1)];
+        sumSquares = new long[sum.length];
+        edges = new long[sum.length];
+        for (int y = 0; y < gridHeight; y++) {
+            long rowSum = 0;
+            long rowSquares = 0;
+            long rowEdges = 0;
+            for (int x = 0; x < gridWidth; x++) {
+                int value = luminance[y * gridWidth + x];
+                int right = x + 1 < gridWidth ? luminance[y * gridWidth + x + 1] : value;
+                int below = y + 1 < gridHeight ? luminance[(y + 1) * gridWidth + x] : value;
+                rowSum += value;
+                rowSquares += value * value;
+                rowEdges += Math.abs(right - value) + Math.abs(below - value);
+                int index = (y + 1) * stride + x + 1;
+                sum[index] = sum[index - stride] + rowSum;
+                sumSquares[index] = sumSquares[index - stride] + rowSquares;
+                edges[index] = edges[index - stride] + rowEdges;
+            }
+        }
+    }
+
+    /**
+     * 分析图片
+     * @param image 图片，不会被修改
+     * @return 分析结果
+     */
+    public static PlacementAnalyzer analyze(BufferedImage image) {
+        return new PlacementAnalyzer(image);
+    }
+
+    /**
+     * 在候选位置中选出最平坦的区域
+     * 候选位置为水印包围盒左上角在可移动范围内的10%到90%，步长10%
+     * @param width 水印包围盒宽度
+     * @param height 水印包围盒高度
+     * @param preferX 用户设定的水平位置百分比
+     * @param preferY 用户设定的垂直位置百分比
+     * @return 水印包围盒左上角在图片中的位置
+     */
+    public Point findCalmestPosition(int width, int height, int preferX, int preferY) {
+        double bestScore = Double.MAX_VALUE;
+        Point best = new Point();
+        for (int py = 10; py <= 90; py += 10) {
+            for (int px = 10; px <= 90; px += 10) {
+                int x = (imageWidth - width) * px / 100;
+                int y = (imageHeight - height) * py / 100;
+                double score = busyness(x, y, width, height)
+                        + DISTANCE_WEIGHT * Math.hypot(px - preferX, py - preferY);
+                if (score < bestScore) {
+                    bestScore = score;
+                    best.setLocation(x, y);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 计算区域的繁杂程度：亮度标准差加上加权的平均边缘强度
+     * @return 分数，越小越平坦
+     */
+    public double busyness(int x, int y, int width, int height) {
+        int[] rect = toGrid(x, y, width, height);
+        double area = (double) (rect[2] - rect[0]) * (rect[3] - rect[1]);
+        double mean = regionSum(sum, rect) / area;
+        double variance = Math.max(0, regionSum(sumSquares, rect) / area - mean * mean);
+        return Math.sqrt(variance) + EDGE_WEIGHT * regionSum(edges, rect) / area;
+    }
+
+    /**
+     * 计算区域的平均亮度
+     * @return 0-255
+     */
+    public double meanLuminance(int x, int y, int width, int height) {
+        int[] rect = toGrid(x, y, width, height);
+        return regionSum(sum, rect) / ((double) (rect[2] - rect[0]) * (rect[3] - rect[1]));
+    }
+
+    /**
+     * 为区域选择文字颜色
+     * 设定颜色与区域的对比度足够时保持不变，否则改用对比度更高的黑色或白色
+     * @param preferred 设定的文字颜色
+     * @param background 区域平均亮度
+     * @return 文字颜色
+     */
+    public static Color chooseTextColor(Color preferred, double background) {
+        double backgroundLuminance = relativeLuminance(background);
+        double textLuminance = relativeLuminance(
+                (77 * preferred.getRed() + 150 * preferred.getGreen() + 29 * preferred.getBlue()) >> 8);
+        if (contrast(textLuminance, backgroundLuminance) >= MIN_CONTRAST) {
+            return preferred;
+        }
+        return contrast(1.0, backgroundLuminance) >= contrast(0.0, backgroundLuminance) ? Color.WHITE : Color.BLACK;
+    }
+
+    private static double relativeLuminance(double value) {
+        double c = value / 255;
+        return c <= 0.03928 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+    }
+
+    private static double contrast(double a, double b) {
+        return (Math.max(a, b) + 0.05) / (Math.min(a, b) + 0.05);
+    }
+
+    /**
+     * 把图片坐标的矩形转换为格子范围，至少包含一个格子
+     * @return {x0, y0, x1, y1}，右下为开区间
+     */
+    private int[] toGrid(int x, int y, int width, int height) {
+        int x0 = clamp((int) Math.floor(x / cellSize), 0, gridWidth - 1);
+        int y0 = clamp((int) Math.floor(y / cellSize), 0, gridHeight - 1);
+        int x1 = clamp((int) Math.ceil((x + width) / cellSize), x0 + 1, gridWidth);
+        int y1 = clamp((int) Math.ceil((y + height) / cellSize), y0 + 1, gridHeight);
+        return new int[]{x0, y0, x1, y1};
+    }
+
+    private double regionSum(long[] table, int[] rect) {
+        int stride = gridWidth + 1;
+        return table[rect[3] * stride + rect[2]] - table[rect[1] * stride + rect[2]]
+                - table[rect[3] * stride + rect[0]] + table[rect[1] * stride + rect[0]];
+    }
+
+    /**
+     * 生成亮度图，每个格子取均匀分布的采样点的平均亮度
+     * 常见像素格式直接读取像素数组
+     */
+    private int[] sampleLuminance(BufferedImage image) {
+        int samples = (int) Math.min(SAMPLES, Math.floor(cellSize));
+        int[] xs = new int[gridWidth * samples];
+        int[] ys = new int[gridHeight * samples];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = Math.min(imageWidth - 1, (int) ((i / samples + (i % samples + 0.5) / samples) * cellSize));
+        }
+        for (int i = 0; i < ys.length; i++) {
+            ys[i] = Math.min(imageHeight - 1, (int) ((i / samples + (i % samples + 0.5) / samples) * cellSize));
+        }
+
+        // 子图的像素数组与图片尺寸不一致，只能逐点读取
+        WritableRaster raster = image.getRaster();
+        boolean direct = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getParent() == null;
+        int type = image.getType();
+        int[] ints = null;
+        byte[] bytes = null;
+        int channels = 0;
+        if (direct && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB
+                || type == BufferedImage.TYPE_INT_ARGB_PRE || type == BufferedImage.TYPE_INT_BGR)) {
+            ints = ((DataBufferInt) raster.getDataBuffer()).getData();
+        } else if (direct && (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)) {
+            bytes = ((DataBufferByte) raster.getDataBuffer()).getData();
+            channels = type == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+        }
+        boolean bgr = type == BufferedImage.TYPE_INT_BGR;
+
+        int[] luminance = new int[gridWidth * gridHeight];
+        int count = samples * samples;
+        for (int gy = 0; gy < gridHeight; gy++) {
+            for (int gx = 0; gx < gridWidth; gx++) {
+                int total = 0;
+                for (int sy = 0; sy < samples; sy++) {
+                    int y = ys[gy * samples + sy];
+                    for (int sx = 0; sx < samples; sx++) {
+                        int x = xs[gx * samples + sx];
+                        int r;
+                        int g;
+                        int b;
+                        if (ints != null) {
+                            int rgb = ints[y * imageWidth + x];
+                            r = bgr ? rgb & 0xFF : (rgb >> 16) & 0xFF;
+                            g = (rgb >> 8) & 0xFF;
+                            b = bgr ? (rgb >> 16) & 0xFF : rgb & 0xFF;
+                        } else if (bytes != null) {
+                            int offset = (y * imageWidth + x) * channels + channels - 3;
+                            b = bytes[offset] & 0xFF;
+                            g = bytes[offset + 1] & 0xFF;
+                            r = bytes[offset + 2] & 0xFF;
+                        } else {
+                            int rgb = image.getRGB(x, y);
+                            r = (rgb >> 16) & 0xFF;
+                            g = (rgb >> 8) & 0xFF;
+                            b = rgb & 0xFF;
+                        }
+                        total += (77 * r + 150 * g + 29 * b) >> 8;
+                    }
+                }
+                luminance[gy * gridWidth + gx] = total / count;
+            }
+        }
+        return luminance;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
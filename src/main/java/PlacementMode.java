@@ -0,0 +1,10 @@
+package main.java;
+
+/**
+ * 水印放置模式枚举
+ */
+public enum PlacementMode {
+    FIXED,  // 按位置百分比放置单个水印
+    TILED,  // 斜向交错平铺满整张图片
+    AUTO    // 按图片内容选择最平坦的位置，并自动选择文字颜色
+}
\ No newline at end of file
@@ -0,0 +1,305 @@
+package main.java;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG编码器
+ * 输出8位RGB或RGBA（保留透明通道）的标准PNG，压缩级别和行过滤方式可选。
+ * 图片按行切分为若干段，各段的过滤和压缩在多个核心上并行进行：
+ * 每段用不带zlib头的Deflater独立压缩，以前一段末尾32KB作为预设字典，
+ * 以SYNC_FLUSH结束使输出按字节对齐，拼接后就是一个完整的zlib流，
+ * Adler-32校验值由各段的校验值合并得到
+ */
+public class PngEncoder implements ImageEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // deflate的回溯窗口大小
+    private static final int WINDOW = 32 * 1024;
+    // 每段原始数据的目标大小，太小会因字典和刷新损失压缩率
+    private static final int SEGMENT_BYTES = 512 * 1024;
+    private static final int ADLER_BASE = 65521;
+
+    private final int compressionLevel;
+    private final PngFilter filter;
+
+    /**
+     * @param compressionLevel 压缩级别 0-9
+     * @param filter 行过滤方式
+     */
+    public PngEncoder(int compressionLevel, PngFilter filter) {
+        this.compressionLevel = Math.max(0, Math.min(9, compressionLevel));
+        this.filter = filter;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".png";
+    }
+
+    @Override
+    public boolean supportsAlpha() {
+        return true;
+    }
+
+    /**
+     * 编码图片
+     * @param image 图片，带透明通道时输出RGBA
+     * @param metadata 未使用
+     * @param output 输出流
+     * @throws IOException 写入失败
+     */
+    @Override
+    public void write(BufferedImage image, ImageMetadata metadata, OutputStream output) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        int channels = alpha ? 4 : 3;
+        int stride = width * channels;
+        byte[] pixels = ImageEncoder.toRgbBytes(image, alpha);
+
+        // 按行切分，每段至少一行
+        int rowsPerSegment = Math.max(1, SEGMENT_BYTES / (stride + 1));
+        int segments = (height + rowsPerSegment - 1) / rowsPerSegment;
+
+        // 第一阶段：各段独立过滤，过滤只依赖原始像素
+        byte[][] filtered = new byte[segments][];
+        IntStream.range(0, segments).parallel().forEach(i -> {
+            int firstRow = i * rowsPerSegment;
+            int rows = Math.min(rowsPerSegment, height - firstRow);
+            filtered[i] = filterRows(pixels, stride, channels, firstRow, rows);
+        });
+
+        // 第二阶段：各段独立压缩，以前一段过滤结果的末尾作为字典
+        byte[][] compressed = new byte[segments][];
+        long[] checksums = new long[segments];
+        IntStream.range(0, segments).parallel().forEach(i -> {
+            byte[] dictionary = i == 0 ? null : tail(filtered[i - 1]);
+            compressed[i] = deflate(filtered[i], dictionary, i == segments - 1);
+            Adler32 adler = new Adler32();
+            adler.update(filtered[i]);
+            checksums[i] = adler.getValue();
+        });
+
+        long adler = checksums[0];
+        for (int i = 1; i < segments; i++) {
+            adler = combineAdler32(adler, checksums[i], filtered[i].length);
+        }
+
+        output.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;                           // 位深度
+        header[9] = (byte) (alpha ? 6 : 2);      // 颜色类型：RGBA或RGB
+        header[10] = 0;                          // 压缩方式：deflate
+        header[11] = 0;                          // 过滤方式：自适应过滤集
+        header[12] = 0;                          // 不隔行
+        writeChunk(output, "IHDR", header, 0, header.length);
+
+        // zlib头：32KB窗口的deflate，FLEVEL按压缩级别设置
+        int level = compressionLevel <= 1 ? 0 : compressionLevel <= 5 ? 1 : compressionLevel == 6 ? 2 : 3;
+        int cmf = 0x78;
+        int flg = level << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        writeChunk(output, "IDAT", new byte[]{(byte) cmf, (byte) flg}, 0, 2);
+        for (byte[] segment : compressed) {
+            writeChunk(output, "IDAT", segment, 0, segment.length);
+        }
+        byte[] trailer = new byte[4];
+        writeInt(trailer, 0, (int) adler);
+        writeChunk(output, "IDAT", trailer, 0, 4);
+        writeChunk(output, "IEND", new byte[0], 0, 0);
+    }
+
+    /**
+     * 过滤一段连续的行，每行前加过滤类型字节
+     */
+    private byte[] filterRows(byte[] pixels, int stride, int bpp, int firstRow, int rows) {
+        byte[] out = new byte[rows * (stride + 1)];
+        for (int r = 0; r < rows; r++) {
+            int row = firstRow + r;
+            int cur = row * stride;
+            int prev = row == 0 ? -1 : cur - stride;
+            int o = r * (stride + 1);
+            int type = filter == PngFilter.ADAPTIVE
+                    ? chooseFilter(pixels, cur, prev, stride, bpp)
+                    : filterType(filter);
+            out[o] = (byte) type;
+            applyFilter(type, pixels, cur, prev, stride, bpp, out, o + 1);
+        }
+        return out;
+    }
+
+    /**
+     * 选择差值绝对值之和最小的过滤方式
+     * 一次遍历同时计算五种过滤的结果，只累加不写出
+     */
+    private static int chooseFilter(byte[] p, int cur, int prev, int stride, int bpp) {
+        long none = 0, sub = 0, up = 0, average = 0, paeth = 0;
+        for (int i = 0; i < stride; i++) {
+            int x = p[cur + i] & 0xFF;
+            int left = i >= bpp ? p[cur + i - bpp] & 0xFF : 0;
+            int above = prev >= 0 ? p[prev + i] & 0xFF : 0;
+            int upLeft = i >= bpp && prev >= 0 ? p[prev + i - bpp] & 0xFF : 0;
+            none += x < 128 ? x : 256 - x;
+            sub += Math.abs((byte) (x - left));
+            up += Math.abs((byte) (x - above));
+            average += Math.abs((byte) (x - ((left + above) >> 1)));
+            paeth += Math.abs((byte) (x - paeth(left, above, upLeft)));
+        }
+        long[] sums = {none, sub, up, average, paeth};
+        int best = 0;
+        for (int type = 1; type < sums.length; type++) {
+            if (sums[type] < sums[best]) {
+                best = type;
+            }
+        }
+        return best;
+    }
+
+    private static int filterType(PngFilter filter) {
+        switch (filter) {
+            case SUB: return 1;
+            case UP: return 2;
+            case PAETH: return 4;
+            default: return 0;
+        }
+    }
+
+    /**
+     * 按PNG规范的过滤类型计算一行
+     * @param prev 上一行起点，第一行为-1（视为全0）
+     */
+    private static void applyFilter(int type, byte[] p, int cur, int prev, int stride, int bpp,
+                                    byte[] out, int o) {
+        switch (type) {
+            case 0:
+                System.arraycopy(p, cur, out, o, stride);
+                break;
+            case 1:
+                for (int i = 0; i < stride; i++) {
+                    int left = i >= bpp ? p[cur + i - bpp] & 0xFF : 0;
+                    out[o + i] = (byte) ((p[cur + i] & 0xFF) - left);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < stride; i++) {
+                    int up = prev >= 0 ? p[prev + i] & 0xFF : 0;
+                    out[o + i] = (byte) ((p[cur + i] & 0xFF) - up);
+                }
+                break;
+            case 3:
+                for (int i = 0; i < stride; i++) {
+                    int left = i >= bpp ? p[cur + i - bpp] & 0xFF : 0;
+                    int up = prev >= 0 ? p[prev + i] & 0xFF : 0;
+                    out[o + i] = (byte) ((p[cur + i] & 0xFF) - ((left + up) >> 1));
+                }
+                break;
+            default:
+                for (int i = 0; i < stride; i++) {
+                    int left = i >= bpp ? p[cur + i - bpp] & 0xFF : 0;
+                    int up = prev >= 0 ? p[prev + i] & 0xFF : 0;
+                    int upLeft = i >= bpp && prev >= 0 ? p[prev + i - bpp] & 0xFF : 0;
+                    out[o + i] = (byte) ((p[cur + i] & 0xFF) - paeth(left, up, upLeft));
+                }
+                break;
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * 压缩一段数据为不带zlib头的deflate块
+     * 中间段以SYNC_FLUSH结束，最后一段以FINISH结束
+     */
+    private byte[] deflate(byte[] data, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    out.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, n);
+                } while (n == buffer.length || !deflater.needsInput());
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] tail(byte[] data) {
+        return data.length <= WINDOW ? data : Arrays.copyOfRange(data, data.length - WINDOW, data.length);
+    }
+
+    /**
+     * 合并两段数据的Adler-32，与zlib的adler32_combine相同
+     * @param adler1 第一段的校验值
+     * @param adler2 第二段的校验值
+     * @param length2 第二段的长度
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= ((long) ADLER_BASE << 1)) sum2 -= ((long) ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(OutputStream output, String type, byte[] data, int offset, int length)
+            throws IOException {
+        byte[] header = new byte[8];
+        writeInt(header, 0, length);
+        for (int i = 0; i < 4; i++) {
+            header[4 + i] = (byte) type.charAt(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data, offset, length);
+        byte[] trailer = new byte[4];
+        writeInt(trailer, 0, (int) crc.getValue());
+        output.write(header);
+        output.write(data, offset, length);
+        output.write(trailer);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,28 @@
+package main.java;
+
+/**
+ * PNG行过滤策略枚举
+ * 过滤让相邻像素的差值参与压缩，照片类图片通常能明显减小体积
+ */
+public enum PngFilter {
+    NONE("不过滤（最快）"),      // 原样输出，适合纯色或已压缩过的图片
+    SUB("左差值"),               // 与左侧像素相减
+    UP("上差值"),                // 与上一行像素相减
+    PAETH("Paeth预测"),          // 按左、上、左上三个像素预测
+    ADAPTIVE("逐行自适应");      // 每行选择差值绝对值之和最小的过滤方式，与libpng默认相同
+
+    private final String displayName;
+
+    PngFilter(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,122 @@
+package main.java;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * QOI编码器
+ * QOI（Quite OK Image）是无损格式，每个像素只做一次查表或差值判断，
+ * 编码速度比PNG快得多，体积接近PNG，适合中间存档输出。
+ * 格式说明见 https://qoiformat.org/qoi-specification.pdf
+ */
+public class QoiEncoder implements ImageEncoder {
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xC0;
+    private static final int OP_RGB = 0xFE;
+    private static final int OP_RGBA = 0xFF;
+    private static final int MAX_RUN = 62;
+
+    @Override
+    public String getExtension() {
+        return ".qoi";
+    }
+
+    @Override
+    public boolean supportsAlpha() {
+        return true;
+    }
+
+    @Override
+    public void write(BufferedImage image, ImageMetadata metadata, OutputStream output) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        int channels = alpha ? 4 : 3;
+        byte[] pixels = ImageEncoder.toRgbBytes(image, alpha);
+
+        // 最坏情况每个像素channels+1字节，加上文件头和结束标记
+        byte[] out = new byte[14 + pixels.length / channels * (channels + 1) + 8];
+        int o = 0;
+        out[o++] = 'q';
+        out[o++] = 'o';
+        out[o++] = 'i';
+        out[o++] = 'f';
+        o = writeInt(out, o, width);
+        o = writeInt(out, o, height);
+        out[o++] = (byte) channels;
+        out[o++] = 0; // sRGB，透明通道非预乘
+
+        int[] index = new int[64];
+        int previous = 0xFF000000;
+        int run = 0;
+        for (int p = 0; p < pixels.length; p += channels) {
+            int r = pixels[p] & 0xFF;
+            int g = pixels[p + 1] & 0xFF;
+            int b = pixels[p + 2] & 0xFF;
+            int a = alpha ? pixels[p + 3] & 0xFF : 0xFF;
+            int pixel = (a << 24) | (r << 16) | (g << 8) | b;
+
+            if (pixel == previous) {
+                run++;
+                if (run == MAX_RUN || p + channels == pixels.length) {
+                    out[o++] = (byte) (OP_RUN | (run - 1));
+                    run = 0;
+                }
+                continue;
+            }
+            if (run > 0) {
+                out[o++] = (byte) (OP_RUN | (run - 1));
+                run = 0;
+            }
+
+            int hash = (r * 3 + g * 5 + b * 7 + a * 11) & 63;
+            if (index[hash] == pixel) {
+                out[o++] = (byte) (OP_INDEX | hash);
+            } else {
+                index[hash] = pixel;
+                if (a == previous >>> 24) {
+                    // 差值按字节回绕计算
+                    int dr = (byte) (r - ((previous >> 16) & 0xFF));
+                    int dg = (byte) (g - ((previous >> 8) & 0xFF));
+                    int db = (byte) (b - (previous & 0xFF));
+                    int drDg = dr - dg;
+                    int dbDg = db - dg;
+                    if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+                        out[o++] = (byte) (OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+                    } else if (dg >= -32 && dg <= 31 && drDg >= -8 && drDg <= 7 && dbDg >= -8 && dbDg <= 7) {
+                        out[o++] = (byte) (OP_LUMA | (dg + 32));
+                        out[o++] = (byte) ((drDg + 8) << 4 | (dbDg + 8));
+                    } else {
+                        out[o++] = (byte) OP_RGB;
+                        out[o++] = (byte) r;
+                        out[o++] = (byte) g;
+                        out[o++] = (byte) b;
+                    }
+                } else {
+                    out[o++] = (byte) OP_RGBA;
+                    out[o++] = (byte) r;
+                    out[o++] = (byte) g;
+                    out[o++] = (byte) b;
+                    out[o++] = (byte) a;
+                }
+            }
+            previous = pixel;
+        }
+
+        // 结束标记：7个0x00和1个0x01
+        o += 7;
+        out[o++] = 1;
+        output.write(out, 0, o);
+    }
+
+    private static int writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+}
@@ -0,0 +1,9 @@
+package main.java;
+
+/**
+ * 水印尺寸模式枚举
+ */
+public enum SizeMode {
+    ABSOLUTE,   // 固定尺寸（字号、缩放比例）
+    RELATIVE    // 相对尺寸（占图片短边的百分比）
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package main.java;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 启动耗时统计类
+ * 记录启动过程中各阶段距离JVM启动的耗时，用于跟踪首次绘制时间
+ */
+public final class StartupMetrics {
+    private static final long JVM_START = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private static final Map<String, Long> marks = new LinkedHashMap<>();
+
+    private StartupMetrics() {
+    }
+
+    /**
+     * 记录一个启动阶段，同一阶段只记录第一次
+     * @param stage 阶段名称
+     */
+    public static synchronized void mark(String stage) {
+        if (marks.containsKey(stage)) {
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - JVM_START;
+        marks.put(stage, elapsed);
+        System.out.println("[启动] " + stage + ": " + elapsed + " ms");
+    }
+
+    /**
+     * 获取所有已记录的阶段耗时
+     * @return 阶段名称到耗时(毫秒)的映射
+     */
+    public static synchronized Map<String, Long> getMarks() {
+        return new LinkedHashMap<>(marks);
+    }
+}
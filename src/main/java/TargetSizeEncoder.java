@@ -0,0 +1,224 @@
+package main.java;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 限定文件大小的JPEG编码器
+ * 在不超过字节预算的前提下寻找尽量高的质量：从原图均匀抽取小块拼成探测图，
+ * 小块保持原分辨率，每像素字节数与原图接近，按面积比例和修正系数即可估算原图大小。
+ * 质量在探测图上搜索，再对原图编码验证，超出预算时按实际比值修正后再编码一次，
+ * 原尺寸编码最多两次；两次都超出预算时再以最低质量编码，保证结果尽可能不超出预算。
+ * 同一批次中的图片内容相近，上一张的质量和修正系数作为下一张的起点，
+ * 搜索从该点向两侧倍增步长确定区间后再二分
+ */
+public class TargetSizeEncoder {
+    // 探测图由 PROBE_GRID x PROBE_GRID 个边长 PROBE_TILE 的小块拼成，边长对齐JPEG的16像素MCU
+    private static final int PROBE_GRID = 8;
+    private static final int PROBE_TILE = 64;
+    // 质量以百分比为单位搜索
+    private static final int MIN_QUALITY = 5;
+    private static final int MAX_QUALITY = 100;
+    // 搜索阶段原尺寸编码的最多次数：一次验证、一次修正
+    private static final int MAX_FULL_ENCODES = 2;
+    // 原尺寸结果达到预算的该比例即认为足够接近，不再尝试更高质量
+    private static final double CLOSE_ENOUGH = 0.97;
+
+    // 上一张图片的结果，多线程导出时只作为起点参考，不要求严格一致
+    private volatile int lastQuality = 85;
+    private volatile double lastCorrection = 1.0;
+
+    /**
+     * 编码结果
+     */
+    public static class Result {
+        public final byte[] data;
+        public final float quality;
+
+        Result(byte[] data, float quality) {
+            this.data = data;
+            this.quality = quality;
+        }
+    }
+
+    /**
+     * 以不超过预算的最高质量编码图片
+     * @param image 不带透明通道的图片
+     * @param budget 字节预算
+     * @param profile 编码配置
+     * @return 编码结果，最低质量仍超出预算时返回最低质量的结果
+     * @throws IOException 编码失败
+     */
+    public Result encode(BufferedImage image, long budget, JpegProfile profile) throws IOException {
+        BufferedImage mosaic = createProbe(image);
+        Probe probe = new Probe(mosaic == null ? image : mosaic, profile);
+        double areaRatio = (double) image.getWidth() * image.getHeight()
+                / ((double) probe.image.getWidth() * probe.image.getHeight());
+        double correction = mosaic == null ? 1.0 : lastCorrection;
+
+        int lo = MIN_QUALITY;
+        int hi = MAX_QUALITY;
+        int seed = lastQuality;
+        byte[] best = null;
+        int bestQuality = MIN_QUALITY;
+        byte[] data = null;
+        int quality = MAX_QUALITY;
+        for (int attempt = 0; attempt < MAX_FULL_ENCODES && lo <= hi; attempt++) {
+            quality = search(probe, budget / (areaRatio * correction), seed, lo, hi);
+            data = encodeFull(image, probe, quality);
+            if (mosaic != null) {
+                // 用原图与探测图的实际比值修正后续估算
+                correction = data.length / (probe.size(quality) * areaRatio);
+            }
+            if (data.length <= budget) {
+                best = data;
+                bestQuality = quality;
+                if (data.length >= budget * CLOSE_ENOUGH) {
+                    break;
+                }
+                lo = quality + 1;
+            } else {
+                hi = quality - 1;
+            }
+            seed = quality;
+        }
+
+        lastCorrection = correction;
+        if (best == null) {
+            if (quality > MIN_QUALITY) {
+                // 验证和修正都超出预算，改用最低质量，结果与报告的质量一致
+                data = encodeFull(image, probe, MIN_QUALITY);
+            }
+            if (data.length > budget) {
+                System.err.println("最低质量仍超出大小限制: " + data.length + " > " + budget + " 字节");
+            }
+            lastQuality = MIN_QUALITY;
+            return new Result(data, MIN_QUALITY / 100f);
+        }
+        lastQuality = bestQuality;
+        return new Result(best, bestQuality / 100f);
+    }
+
+    /**
+     * 在探测图上搜索[lo, hi]内不超过预算的最高质量
+     * 从起点按1、2、4...的步长向外扩展，找到跨越预算的区间后二分
+     * @param probe 探测图
+     * @param probeBudget 折算到探测图的预算
+     * @param seed 起始质量
+     * @return 质量百分比，区间内都不满足时返回lo
+     */
+    private int search(Probe probe, double probeBudget, int seed, int lo, int hi) throws IOException {
+        int quality = Math.max(lo, Math.min(hi, seed));
+        if (probe.size(quality) <= probeBudget) {
+            lo = quality;
+            int step = 1;
+            while (lo < hi) {
+                int next = Math.min(hi, lo + step);
+                if (probe.size(next) > probeBudget) {
+                    hi = next - 1;
+                    break;
+                }
+                lo = next;
+                step *= 2;
+            }
+        } else {
+            int floor = lo;
+            hi = quality - 1;
+            int step = 1;
+            while (true) {
+                if (hi < floor) {
+                    return floor;
+                }
+                int next = Math.max(floor, hi - step + 1);
+                if (probe.size(next) <= probeBudget) {
+                    lo = next;
+                    break;
+                }
+                hi = next - 1;
+                step *= 2;
+            }
+        }
+        // lo满足预算，hi以上都不满足，二分剩余区间
+        while (lo < hi) {
+            int mid = (lo + hi + 1) / 2;
+            if (probe.size(mid) <= probeBudget) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 探测图及各质量下的编码结果
+     */
+    private static class Probe {
+        final BufferedImage image;
+        final JpegProfile profile;
+        final Map<Integer, byte[]> results = new HashMap<>();
+
+        Probe(BufferedImage image, JpegProfile profile) {
+            this.image = image;
+            this.profile = profile;
+        }
+
+        byte[] encode(int quality) throws IOException {
+            byte[] data = results.get(quality);
+            if (data == null) {
+                data = encodeAt(image, quality, profile);
+                results.put(quality, data);
+            }
+            return data;
+        }
+
+        int size(int quality) throws IOException {
+            return encode(quality).length;
+        }
+    }
+
+    /**
+     * 原尺寸编码，探测图就是原图时直接取搜索中已编码的结果
+     */
+    private static byte[] encodeFull(BufferedImage image, Probe probe, int quality) throws IOException {
+        return probe.image == image ? probe.encode(quality) : encodeAt(image, quality, probe.profile);
+    }
+
+    private static byte[] encodeAt(BufferedImage image, int quality, JpegProfile profile) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JpegEncoder.write(image, output, quality / 100f, profile);
+        return output.toByteArray();
+    }
+
+    /**
+     * 从原图均匀抽取小块拼成探测图
+     * @return 探测图，原图不足探测图的四倍大小时返回null，直接在原图上搜索
+     */
+    private static BufferedImage createProbe(BufferedImage image) {
+        int side = PROBE_GRID * PROBE_TILE;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if ((long) width * height < 4L * side * side || width < side || height < side) {
+            return null;
+        }
+        BufferedImage probe = new BufferedImage(side, side, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = probe.createGraphics();
+        for (int row = 0; row < PROBE_GRID; row++) {
+            // 小块在原图中的起点对齐16像素，与原图的MCU划分一致
+            int sy = (int) ((long) (height - PROBE_TILE) * row / (PROBE_GRID - 1)) & ~15;
+            for (int col = 0; col < PROBE_GRID; col++) {
+                int sx = (int) ((long) (width - PROBE_TILE) * col / (PROBE_GRID - 1)) & ~15;
+                int dx = col * PROBE_TILE;
+                int dy = row * PROBE_TILE;
+                g2d.drawImage(image, dx, dy, dx + PROBE_TILE, dy + PROBE_TILE,
+                        sx, sy, sx + PROBE_TILE, sy + PROBE_TILE, null);
+            }
+        }
+        g2d.dispose();
+        return probe;
+    }
+}
@@ -0,0 +1,426 @@
+package main.java;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 模板存储类
+ * 以追加写的二进制记录文件保存水印模板：
+ * 文件头为魔数和格式版本，之后每条记录为 [操作][名称长度][名称][内容长度][内容][CRC32]。
+ * 启动时只扫描记录头建立索引，模板内容在首次读取时才解码；
+ * 保存和删除只追加一条记录，失效记录过多时整体压缩重写。
+ * 版本更新的文件以只读方式打开，无法识别的文件先改名备份再新建，都不会被覆盖
+ */
+public class TemplateStore {
+    private static final int MAGIC = 0x50575453; // "PWTS"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 6;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+
+    // 失效记录超过该数量且多于有效记录时触发压缩
+    private static final int COMPACT_THRESHOLD = 64;
+
+    private final File file;
+    private final Map<String, long[]> index = new LinkedHashMap<>(); // 名称 -> {内容偏移, 内容长度}
+    private final Map<String, WatermarkSettings> loaded = new HashMap<>();
+    private int deadRecords = 0;
+    // 文件由更新版本写入时只读，追加或压缩会丢失无法解析的记录
+    private boolean readOnly = false;
+
+    public TemplateStore(File file) {
+        this.file = file;
+        scan();
+    }
+
+    /**
+     * 获取所有模板名称
+     * @return 模板名称列表
+     */
+    public synchronized List<String> names() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * 判断模板是否存在
+     * @param name 模板名称
+     * @return 存在返回true
+     */
+    public synchronized boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    /**
+     * 读取模板，首次读取时从磁盘解码
+     * @param name 模板名称
+     * @return 水印设置的副本，不存在或记录损坏时返回null
+     */
+    public synchronized WatermarkSettings get(String name) {
+        WatermarkSettings settings = loaded.get(name);
+        if (settings != null) {
+            return settings.copy();
+        }
+        long[] location = index.get(name);
+        if (location == null) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] body = new byte[(int) location[1]];
+            raf.seek(location[0]);
+            raf.readFully(body);
+            long storedCrc = raf.readInt() & 0xFFFFFFFFL;
+            if (checksum(name.getBytes(StandardCharsets.UTF_8), body) != storedCrc) {
+                System.err.println("模板记录校验失败: " + name);
+                return null;
+            }
+            settings = decode(body);
+            loaded.put(name, settings);
+            return settings.copy();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 模板文件是否只读
+     * @return 文件由更新版本写入时返回true
+     */
+    public synchronized boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * 保存模板，追加一条记录
+     * @param name 模板名称
+     * @param settings 水印设置
+     * @return 保存成功返回true，只读或写入失败返回false
+     */
+    public synchronized boolean put(String name, WatermarkSettings settings) {
+        if (rejectWrite()) {
+            return false;
+        }
+        WatermarkSettings snapshot = settings.copy();
+        byte[] body = encode(snapshot);
+        if (index.containsKey(name)) {
+            deadRecords++;
+        }
+        long offset = append(OP_PUT, name, body);
+        if (offset >= 0) {
+            index.put(name, new long[]{offset, body.length});
+            loaded.put(name, snapshot);
+            compactIfNeeded();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 批量保存模板，所有记录一次写入并同步，用于迁移旧数据
+     * @param all 模板名称到设置的映射
+     */
+    public synchronized void putAll(Map<String, WatermarkSettings> all) {
+        if (rejectWrite()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Map<String, long[]> added = new LinkedHashMap<>();
+        Map<String, WatermarkSettings> snapshots = new HashMap<>();
+        try {
+            long start = Math.max(file.length(), HEADER_SIZE);
+            for (Map.Entry<String, WatermarkSettings> entry : all.entrySet()) {
+                WatermarkSettings snapshot = entry.getValue().copy();
+                byte[] nameBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] body = encode(snapshot);
+                long bodyOffset = start + out.size() + 5 + nameBytes.length + 4;
+                writeRecord(out, OP_PUT, nameBytes, body);
+                added.put(entry.getKey(), new long[]{bodyOffset, body.length});
+                snapshots.put(entry.getKey(), snapshot);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (write(bytes.toByteArray()) >= 0) {
+            for (String name : added.keySet()) {
+                if (index.containsKey(name)) {
+                    deadRecords++;
+                }
+            }
+            index.putAll(added);
+            loaded.putAll(snapshots);
+            compactIfNeeded();
+        }
+    }
+    
+    /**
+     * 删除模板，追加一条删除记录
+     * @param name 模板名称
+     */
+    public synchronized void remove(String name) {
+        if (!index.containsKey(name) || rejectWrite()) {
+            return;
+        }
+        if (append(OP_DELETE, name, new byte[0]) >= 0) {
+            index.remove(name);
+            loaded.remove(name);
+            // 被删除的记录和删除记录本身都已失效
+            deadRecords += 2;
+            compactIfNeeded();
+        }
+    }
+
+    private boolean rejectWrite() {
+        if (readOnly) {
+            System.err.println("模板文件由更新版本创建，不能修改: " + file.getPath());
+        }
+        return readOnly;
+    }
+
+    /**
+     * 将设置编码为记录内容
+     * @param settings 水印设置
+     * @return 编码后的字节
+     */
+    public static byte[] encode(WatermarkSettings settings) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Map<String, String> map = settings.toMap();
+            out.writeInt(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 从记录内容解码设置
+     * @param body 编码后的字节
+     * @return 水印设置
+     * @throws IOException 内容格式错误
+     */
+    public static WatermarkSettings decode(byte[] body) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            int count = in.readInt();
+            Map<String, String> map = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                map.put(in.readUTF(), in.readUTF());
+            }
+            return WatermarkSettings.fromMap(map);
+        }
+    }
+
+    /**
+     * 扫描记录文件建立索引
+     * 末尾不完整的记录（写入中途崩溃）会被截断；
+     * 版本更新的文件只读打开，无法识别的文件改名备份后当作新文件
+     */
+    private void scan() {
+        if (!file.exists()) {
+            return;
+        }
+        int version;
+        try {
+            version = readVersion();
+        } catch (IOException e) {
+            // 读不了文件头时不能判断格式，只读以免覆盖
+            e.printStackTrace();
+            readOnly = true;
+            return;
+        }
+        if (version < 0) {
+            moveAside();
+            return;
+        }
+        if (version > VERSION) {
+            System.err.println("模板文件版本过新，以只读方式打开: " + version);
+            readOnly = true;
+            return;
+        }
+
+        long validLength = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long fileLength = file.length();
+            in.skipNBytes(HEADER_SIZE);
+
+            long offset = HEADER_SIZE;
+            while (offset < fileLength) {
+                if (offset + 5 > fileLength) break;
+                byte op = in.readByte();
+                int nameLength = in.readInt();
+                if (nameLength < 0 || offset + 5 + nameLength + 4 > fileLength) break;
+                byte[] name = new byte[nameLength];
+                in.readFully(name);
+                int bodyLength = in.readInt();
+                long bodyOffset = offset + 5 + nameLength + 4;
+                if (bodyLength < 0 || bodyOffset + bodyLength + 4 > fileLength) break;
+                in.skipNBytes(bodyLength + 4L);
+
+                String key = new String(name, StandardCharsets.UTF_8);
+                if (op == OP_PUT) {
+                    if (index.put(key, new long[]{bodyOffset, bodyLength}) != null) {
+                        deadRecords++;
+                    }
+                } else if (op == OP_DELETE) {
+                    index.remove(key);
+                    deadRecords += 2;
+                } else {
+                    break;
+                }
+                offset = bodyOffset + bodyLength + 4;
+                validLength = offset;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (validLength < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 读取文件头中的格式版本
+     * @return 版本号，文件过短或魔数不符时返回-1
+     * @throws IOException 读取失败
+     */
+    private int readVersion() throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC ? in.readShort() & 0xFFFF : -1;
+        }
+    }
+
+    /**
+     * 把无法识别的文件改名为不重复的 .bak 文件，之后的写入从空文件开始；
+     * 改名失败时只读，避免覆盖原文件
+     */
+    private void moveAside() {
+        File backup = new File(file.getPath() + ".bak");
+        for (int i = 1; backup.exists(); i++) {
+            backup = new File(file.getPath() + ".bak" + i);
+        }
+        try {
+            Files.move(file.toPath(), backup.toPath());
+            System.err.println("模板文件格式无法识别，已备份为: " + backup.getPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("模板文件格式无法识别且无法备份，以只读方式打开: " + file.getPath());
+            readOnly = true;
+        }
+    }
+
+    /**
+     * 追加一条记录并同步到磁盘
+     * @return 记录内容的偏移，失败返回-1
+     */
+    private long append(byte op, String name, byte[] body) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            writeRecord(new DataOutputStream(bytes), op, nameBytes, body);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        long start = write(bytes.toByteArray());
+        return start < 0 ? -1 : start + 5 + nameBytes.length + 4;
+    }
+    
+    /**
+     * 在文件末尾写入已编码的记录并同步到磁盘，必要时先写文件头
+     * @return 写入位置，失败返回-1
+     */
+    private long write(byte[] records) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < HEADER_SIZE) {
+                raf.setLength(0);
+                raf.writeInt(MAGIC);
+                raf.writeShort(VERSION);
+            }
+            long start = raf.length();
+            raf.seek(start);
+            raf.write(records);
+            raf.getFD().sync();
+            return start;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * 失效记录过多时，把有效模板写入临时文件后原子替换
+     */
+    private void compactIfNeeded() {
+        if (deadRecords < COMPACT_THRESHOLD || deadRecords < index.size()) {
+            return;
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        Map<String, long[]> newIndex = new LinkedHashMap<>();
+        try (RandomAccessFile source = new RandomAccessFile(file, "r");
+             FileOutputStream fos = new FileOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            long offset = HEADER_SIZE;
+            for (Map.Entry<String, long[]> entry : index.entrySet()) {
+                byte[] nameBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] body = new byte[(int) entry.getValue()[1]];
+                source.seek(entry.getValue()[0]);
+                source.readFully(body);
+                writeRecord(out, OP_PUT, nameBytes, body);
+                long bodyOffset = offset + 5 + nameBytes.length + 4;
+                newIndex.put(entry.getKey(), new long[]{bodyOffset, body.length});
+                offset = bodyOffset + body.length + 4;
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            index.clear();
+            index.putAll(newIndex);
+            deadRecords = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, byte[] name, byte[] body) throws IOException {
+        out.writeByte(op);
+        out.writeInt(name.length);
+        out.write(name);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeInt((int) checksum(name, body));
+    }
+
+    private static long checksum(byte[] name, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(body);
+        return crc.getValue();
+    }
+}
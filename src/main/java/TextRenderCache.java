@@ -0,0 +1,147 @@
+package main.java;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文本渲染缓存类
+ * 按字体名称、样式、字号和文本缓存字体对象和字形轮廓，
+ * 同一批次中文本布局只计算一次，绘制时直接填充缓存的轮廓
+ */
+public final class TextRenderCache {
+    // 与开启文本抗锯齿的Graphics2D一致的渲染上下文
+    private static final FontRenderContext FRC = new FontRenderContext(null, true, false);
+    private static final int MAX_ENTRIES = 256;
+
+    private static final Map<FontKey, Font> fonts = new ConcurrentHashMap<>();
+    private static final Map<LayoutKey, TextLayoutInfo> layouts = new ConcurrentHashMap<>();
+
+    private TextRenderCache() {
+    }
+
+    /**
+     * 文本布局信息
+     * 轮廓以基线起点为原点
+     */
+    public static final class TextLayoutInfo {
+        public final Font font;
+        public final Shape outline;
+        public final int width;
+        public final int height;
+        public final int ascent;
+
+        TextLayoutInfo(Font font, Shape outline, int width, int height, int ascent) {
+            this.font = font;
+            this.outline = outline;
+            this.width = width;
+            this.height = height;
+            this.ascent = ascent;
+        }
+
+        /**
+         * 在指定基线位置填充文本轮廓
+         * @param g2d Graphics2D对象
+         * @param x 基线起点x
+         * @param y 基线y
+         */
+        public void fill(Graphics2D g2d, float x, float y) {
+            AffineTransform originalTransform = g2d.getTransform();
+            g2d.translate(x, y);
+            g2d.fill(outline);
+            g2d.setTransform(originalTransform);
+        }
+    }
+
+    /**
+     * 获取字体
+     * @param name 字体名称
+     * @param style 字体样式
+     * @param size 字号
+     * @return 字体对象
+     */
+    public static Font getFont(String name, int style, int size) {
+        return fonts.computeIfAbsent(new FontKey(name, style, size), k -> new Font(k.name, k.style, k.size));
+    }
+
+    /**
+     * 获取文本布局
+     * @param name 字体名称
+     * @param style 字体样式
+     * @param size 字号
+     * @param text 文本内容
+     * @return 文本布局信息
+     */
+    public static TextLayoutInfo getLayout(String name, int style, int size, String text) {
+        LayoutKey key = new LayoutKey(new FontKey(name, style, size), text);
+        TextLayoutInfo info = layouts.get(key);
+        if (info != null) {
+            return info;
+        }
+        if (layouts.size() >= MAX_ENTRIES) {
+            // 预览时逐字输入会产生大量一次性条目，超出上限直接清空
+            layouts.clear();
+        }
+        return layouts.computeIfAbsent(key, k -> createLayout(getFont(name, style, size), text));
+    }
+
+    private static TextLayoutInfo createLayout(Font font, String text) {
+        GlyphVector glyphs = font.createGlyphVector(FRC, text);
+        LineMetrics metrics = font.getLineMetrics(text, FRC);
+        int ascent = Math.round(metrics.getAscent());
+        int height = ascent + Math.round(metrics.getDescent()) + Math.round(metrics.getLeading());
+        int width = (int) Math.ceil(glyphs.getLogicalBounds().getWidth());
+        return new TextLayoutInfo(font, glyphs.getOutline(), width, height, ascent);
+    }
+
+    private static final class FontKey {
+        final String name;
+        final int style;
+        final int size;
+
+        FontKey(String name, int style, int size) {
+            this.name = name;
+            this.style = style;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FontKey)) return false;
+            FontKey other = (FontKey) o;
+            return style == other.style && size == other.size && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, style, size);
+        }
+    }
+
+    private static final class LayoutKey {
+        final FontKey font;
+        final String text;
+
+        LayoutKey(FontKey font, String text) {
+            this.font = font;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LayoutKey)) return false;
+            LayoutKey other = (LayoutKey) o;
+            return font.equals(other.font) && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * font.hashCode() + text.hashCode();
+        }
+    }
+}
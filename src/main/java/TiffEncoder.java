@@ -0,0 +1,320 @@
+package main.java;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * TIFF编码器
+ * 输出按条带（strip）存储的8位RGB或RGBA基线TIFF，可选不压缩或LZW压缩。
+ * IFD紧跟在文件头之后，不压缩时条带逐个转换后直接写出；LZW压缩时各条带在多个核心上
+ * 并行编码后按顺序写出，并使用水平差分预测以提高照片的压缩率
+ */
+public class TiffEncoder implements ImageEncoder {
+    /**
+     * 压缩方式
+     */
+    public enum Compression {
+        NONE("不压缩", 1),
+        LZW("LZW", 5);
+
+        private final String displayName;
+        private final int tag;
+
+        Compression(String displayName, int tag) {
+            this.displayName = displayName;
+            this.tag = tag;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    // 每个条带的目标字节数
+    private static final int STRIP_BYTES = 256 * 1024;
+
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_RATIONAL = 5;
+
+    private final Compression compression;
+
+    public TiffEncoder(Compression compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".tif";
+    }
+
+    @Override
+    public boolean supportsAlpha() {
+        return true;
+    }
+
+    @Override
+    public void write(BufferedImage image, ImageMetadata metadata, OutputStream output) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        int channels = alpha ? 4 : 3;
+        int stride = width * channels;
+        int rowsPerStrip = Math.max(1, STRIP_BYTES / stride);
+        int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+
+        // 不压缩时每个条带的字节数事先可知，条带逐个转换后直接写出；
+        // LZW压缩后的长度要编码完才知道，条带并行编码后暂存
+        byte[][] encoded = null;
+        long[] counts = new long[strips];
+        if (compression == Compression.LZW) {
+            byte[] pixels = ImageEncoder.toRgbBytes(image, alpha);
+            byte[][] lzw = new byte[strips][];
+            IntStream.range(0, strips).parallel().forEach(i -> {
+                int offset = i * rowsPerStrip * stride;
+                int length = Math.min(rowsPerStrip, height - i * rowsPerStrip) * stride;
+                lzw[i] = lzw(predict(pixels, offset, length, stride, channels));
+            });
+            encoded = lzw;
+            for (int i = 0; i < strips; i++) {
+                counts[i] = encoded[i].length;
+            }
+        } else {
+            for (int i = 0; i < strips; i++) {
+                counts[i] = (long) Math.min(rowsPerStrip, height - i * rowsPerStrip) * stride;
+            }
+        }
+
+        // 布局：文件头、IFD、IFD引用的数组、条带数据，所有偏移在写出像素前即可确定
+        int entries = alpha ? 15 : 14;
+        long ifdOffset = 8;
+        long bitsOffset = ifdOffset + 2 + entries * 12L + 4;
+        long offsetsOffset = bitsOffset + channels * 2L;
+        long countsOffset = offsetsOffset + strips * 4L;
+        long resolutionOffset = countsOffset + strips * 4L;
+        long dataOffset = resolutionOffset + 16;
+        long dataBytes = 0;
+        for (long count : counts) {
+            dataBytes += count;
+        }
+        if (dataOffset + dataBytes > 0xFFFFFFFFL) {
+            throw new IOException("图片过大，超出TIFF的4GB限制");
+        }
+
+        Writer out = new Writer(output);
+        out.bytes('I', 'I');
+        out.short16(42);
+        out.int32(ifdOffset);
+
+        out.short16(entries);
+        out.entry(256, TYPE_LONG, 1, width);                            // ImageWidth
+        out.entry(257, TYPE_LONG, 1, height);                           // ImageLength
+        out.entry(258, TYPE_SHORT, channels, bitsOffset);               // BitsPerSample
+        out.entry(259, TYPE_SHORT, 1, compression.tag);                 // Compression
+        out.entry(262, TYPE_SHORT, 1, 2);                               // PhotometricInterpretation: RGB
+        out.entry(273, TYPE_LONG, strips, strips == 1 ? dataOffset : offsetsOffset); // StripOffsets
+        out.entry(277, TYPE_SHORT, 1, channels);                        // SamplesPerPixel
+        out.entry(278, TYPE_LONG, 1, rowsPerStrip);                     // RowsPerStrip
+        out.entry(279, TYPE_LONG, strips, strips == 1 ? counts[0] : countsOffset); // StripByteCounts
+        out.entry(282, TYPE_RATIONAL, 1, resolutionOffset);             // XResolution
+        out.entry(283, TYPE_RATIONAL, 1, resolutionOffset + 8);         // YResolution
+        out.entry(284, TYPE_SHORT, 1, 1);                               // PlanarConfiguration: 交错
+        out.entry(296, TYPE_SHORT, 1, 2);                               // ResolutionUnit: 英寸
+        out.entry(317, TYPE_SHORT, 1, compression == Compression.LZW ? 2 : 1); // Predictor
+        if (alpha) {
+            out.entry(338, TYPE_SHORT, 1, 2);                           // ExtraSamples: 非预乘透明度
+        }
+        out.int32(0);
+
+        for (int i = 0; i < channels; i++) {
+            out.short16(8);
+        }
+        long offset = dataOffset;
+        for (long count : counts) {
+            out.int32(offset);
+            offset += count;
+        }
+        for (long count : counts) {
+            out.int32(count);
+        }
+        // 72 dpi
+        out.int32(72);
+        out.int32(1);
+        out.int32(72);
+        out.int32(1);
+
+        if (encoded != null) {
+            for (byte[] strip : encoded) {
+                out.raw(strip, strip.length);
+            }
+        } else {
+            // 只占用一个条带的缓冲区
+            byte[] strip = new byte[rowsPerStrip * stride];
+            for (int i = 0; i < strips; i++) {
+                int rows = Math.min(rowsPerStrip, height - i * rowsPerStrip);
+                ImageEncoder.toRgbBytes(image, alpha, i * rowsPerStrip, rows, strip);
+                out.raw(strip, rows * stride);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * 水平差分：每个样本减去同一行中左侧像素的同一分量
+     */
+    private static byte[] predict(byte[] pixels, int offset, int length, int stride, int channels) {
+        byte[] out = new byte[length];
+        for (int row = 0; row < length; row += stride) {
+            int base = offset + row;
+            System.arraycopy(pixels, base, out, row, channels);
+            for (int i = channels; i < stride; i++) {
+                out[row + i] = (byte) (pixels[base + i] - pixels[base + i - channels]);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * TIFF的LZW压缩：高位在前，码长9到12位，按TIFF的提前换码长约定，
+     * 表满时输出清除码重新开始
+     */
+    static byte[] lzw(byte[] data) {
+        final int clear = 256;
+        final int end = 257;
+        final int tableSize = 5003 * 2;
+        int[] keys = new int[tableSize];
+        short[] codes = new short[tableSize];
+        Arrays.fill(keys, -1);
+
+        BitWriter out = new BitWriter(data.length / 2 + 16);
+        int width = 9;
+        int nextCode = 258;
+        out.write(clear, width);
+        if (data.length == 0) {
+            out.write(end, width);
+            return out.toByteArray();
+        }
+
+        int prefix = data[0] & 0xFF;
+        for (int i = 1; i < data.length; i++) {
+            int c = data[i] & 0xFF;
+            int key = (prefix << 8) | c;
+            int slot = (key * 0x9E3779B1 >>> 18) % tableSize;
+            while (keys[slot] != -1 && keys[slot] != key) {
+                slot = slot + 1 == tableSize ? 0 : slot + 1;
+            }
+            if (keys[slot] == key) {
+                prefix = codes[slot];
+                continue;
+            }
+            out.write(prefix, width);
+            keys[slot] = key;
+            codes[slot] = (short) nextCode++;
+            if (nextCode == 4094) {
+                out.write(clear, width);
+                Arrays.fill(keys, -1);
+                nextCode = 258;
+                width = 9;
+            } else if (nextCode > (1 << width) - 1) {
+                width++;
+            }
+            prefix = c;
+        }
+        out.write(prefix, width);
+        // 解码端读到最后一个码后还会加一个表项，码长要随之调整
+        nextCode++;
+        if (nextCode > (1 << width) - 1 && width < 12) {
+            width++;
+        }
+        out.write(end, width);
+        return out.toByteArray();
+    }
+
+    /**
+     * 高位在前的位输出
+     */
+    private static class BitWriter {
+        private final ByteArrayOutputStream bytes;
+        private long buffer;
+        private int bits;
+
+        BitWriter(int capacity) {
+            bytes = new ByteArrayOutputStream(capacity);
+        }
+
+        void write(int code, int width) {
+            buffer = (buffer << width) | code;
+            bits += width;
+            while (bits >= 8) {
+                bits -= 8;
+                bytes.write((int) (buffer >>> bits));
+            }
+        }
+
+        byte[] toByteArray() {
+            if (bits > 0) {
+                bytes.write((int) (buffer << (8 - bits)));
+                bits = 0;
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * 小端序输出
+     */
+    private static class Writer {
+        private final OutputStream output;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+
+        Writer(OutputStream output) {
+            this.output = output;
+        }
+
+        void bytes(int... values) throws IOException {
+            for (int value : values) {
+                if (position == buffer.length) {
+                    flush();
+                }
+                buffer[position++] = (byte) value;
+            }
+        }
+
+        void short16(int value) throws IOException {
+            bytes(value, value >>> 8);
+        }
+
+        void int32(long value) throws IOException {
+            bytes((int) value, (int) (value >>> 8), (int) (value >>> 16), (int) (value >>> 24));
+        }
+
+        void entry(int tag, int type, int count, long value) throws IOException {
+            short16(tag);
+            short16(type);
+            int32(count);
+            if (type == TYPE_SHORT && count == 1) {
+                // 单个SHORT值放在值字段的低位
+                short16((int) value);
+                short16(0);
+            } else {
+                int32(value);
+            }
+        }
+
+        void raw(byte[] data, int length) throws IOException {
+            flush();
+            output.write(data, 0, length);
+        }
+
+        void flush() throws IOException {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
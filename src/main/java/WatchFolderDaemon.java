@@ -0,0 +1,294 @@
+package main.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 监视文件夹守护进程
+ * 通过WatchService监听指定文件夹中新增或修改的图片，文件大小和修改时间
+ * 在静默期内不再变化后才视为写入完成，交给常驻线程池添加水印并导出。
+ * 导出清单保证同一文件不会被重复处理
+ */
+public class WatchFolderDaemon {
+    private static final long SCAN_INTERVAL_MS = 500;
+    private static final long MANIFEST_SAVE_INTERVAL_MS = 10_000;
+
+    private final List<Path> folders;
+    private final File outputDir;
+    // 输出目录的绝对路径，其中的文件是本进程的导出结果，不能再次处理
+    private final Path outputPath;
+    private final BatchExporter exporter;
+    private final ImageProcessor imageProcessor;
+    private final String fingerprint;
+    private final ExportManifest manifest;
+    private final ExecutorService workers;
+    private final long quietPeriodMs;
+
+    // 等待写入完成的文件 -> {大小, 修改时间, 最后一次变化的时间}
+    private final Map<Path, long[]> settling = new HashMap<>();
+    // 已提交但未完成的文件，避免重复提交
+    private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running = true;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @param folders 监视的文件夹
+     * @param outputDir 输出目录
+     * @param settings 水印设置
+     * @param imageProcessor 输出选项
+     * @param threads 工作线程数
+     * @param quietPeriodMs 文件保持不变多久后视为写入完成
+     */
+    public WatchFolderDaemon(List<Path> folders, File outputDir, WatermarkSettings settings,
+                             ImageProcessor imageProcessor, int threads, long quietPeriodMs) {
+        this.folders = folders;
+        this.outputDir = outputDir;
+        this.outputPath = outputDir.toPath().toAbsolutePath().normalize();
+        this.imageProcessor = imageProcessor;
+        WatermarkManager watermarkManager = new WatermarkManager();
+        watermarkManager.applySettings(settings.copy());
+        this.exporter = new BatchExporter(imageProcessor, watermarkManager);
+        this.fingerprint = exporter.currentFingerprint();
+        this.manifest = new ExportManifest(outputDir);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads));
+        this.quietPeriodMs = quietPeriodMs;
+    }
+
+    /**
+     * 开始监视，阻塞直到调用stop
+     * 启动时先处理文件夹中已有但尚未导出的图片
+     * @throws IOException 无法注册监视，或输出目录就是某个监视目录
+     */
+    public void run() throws IOException {
+        for (Path folder : folders) {
+            // 输出目录与监视目录相同时导出结果会被再次处理，按原文件名输出时还会覆盖原图
+            if (Files.isDirectory(folder) && Files.isDirectory(outputPath)
+                    && Files.isSameFile(folder, outputPath)) {
+                throw new IOException("输出目录不能是监视目录: " + folder.toAbsolutePath());
+            }
+        }
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            for (Path folder : folders) {
+                folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                try (DirectoryStream<Path> existing = Files.newDirectoryStream(folder)) {
+                    for (Path path : existing) {
+                        offer(path);
+                    }
+                }
+                System.out.println("[监视] " + folder.toAbsolutePath());
+            }
+
+            long lastSave = System.currentTimeMillis();
+            while (running) {
+                WatchKey key;
+                try {
+                    key = watchService.poll(SCAN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (key != null) {
+                    Path folder = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // 事件丢失时重新扫描整个文件夹
+                            rescan(folder);
+                            continue;
+                        }
+                        offer(folder.resolve((Path) event.context()));
+                    }
+                    key.reset();
+                }
+
+                submitSettled();
+                if (System.currentTimeMillis() - lastSave >= MANIFEST_SAVE_INTERVAL_MS) {
+                    manifest.save();
+                    lastSave = System.currentTimeMillis();
+                }
+            }
+        } finally {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            manifest.save();
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * 停止监视，已提交的任务会处理完
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 等待监视循环退出且清单保存完毕
+     * @param timeoutMs 最长等待时间
+     */
+    public void awaitStopped(long timeoutMs) {
+        try {
+            stopped.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rescan(Path folder) {
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(folder)) {
+            for (Path path : existing) {
+                offer(path);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 记录新出现或变化的文件，进入静默期观察
+     * 启动扫描、重新扫描和监视事件都经过这里，输出目录中的文件一律忽略
+     */
+    private void offer(Path path) {
+        if (!ExportCoordinator.isImageName(path.getFileName().toString()) || !Files.isRegularFile(path)) {
+            return;
+        }
+        if (outputPath.equals(path.toAbsolutePath().normalize().getParent())) {
+            return;
+        }
+        File file = path.toFile();
+        settling.put(path, new long[]{file.length(), file.lastModified(), System.currentTimeMillis()});
+    }
+
+    /**
+     * 把静默期内未再变化的文件提交给线程池
+     */
+    private void submitSettled() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, long[]>> iterator = settling.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, long[]> entry = iterator.next();
+            File file = entry.getKey().toFile();
+            long[] state = entry.getValue();
+            if (!file.exists()) {
+                iterator.remove();
+                continue;
+            }
+            if (file.length() != state[0] || file.lastModified() != state[1]) {
+                state[0] = file.length();
+                state[1] = file.lastModified();
+                state[2] = now;
+                continue;
+            }
+            if (now - state[2] < quietPeriodMs || !isReadable(file) || queued.contains(entry.getKey())) {
+                continue;
+            }
+            iterator.remove();
+
+            File outputFile = new File(outputDir, imageProcessor.getOutputFileName(file.getName()));
+            if (manifest.isUpToDate(file, fingerprint, outputFile)) {
+                continue;
+            }
+            Path path = entry.getKey();
+            queued.add(path);
+            workers.submit(() -> {
+                try {
+                    long start = System.currentTimeMillis();
+                    if (exporter.exportFile(file, outputFile)) {
+                        manifest.record(file, fingerprint, outputFile);
+                        System.out.println("[监视] 已导出 " + file.getName() + " ("
+                                + (System.currentTimeMillis() - start) + " ms)");
+                    } else {
+                        System.err.println("[监视] 导出失败 " + file.getPath());
+                    }
+                } finally {
+                    queued.remove(path);
+                }
+            });
+        }
+    }
+
+    /**
+     * 文件仍被其他程序独占写入时（如Windows共享）无法打开
+     */
+    private static boolean isReadable(File file) {
+        try {
+            new RandomAccessFile(file, "r").close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 命令行入口
+     * 用法: WatchFolderDaemon &lt;输出目录&gt; &lt;监视目录...&gt;
+     *       [--template 模板名] [--format jpeg|png|qoi|tiff] [--quality 0.9] [--max-kb 500] [--max-px 2048] [--threads n] [--quiet 毫秒] [--memory-mb 1024]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法: WatchFolderDaemon <输出目录> <监视目录...> "
+                    + "[--template 模板名] [--format jpeg|png|qoi|tiff] [--quality 0.9] [--max-kb 500] [--max-px 2048] [--threads n] [--quiet 2000] [--memory-mb 1024]");
+            System.exit(1);
+        }
+        File outputDir = new File(args[0]);
+        outputDir.mkdirs();
+
+        WatermarkSettings settings = new WatermarkSettings();
+        ImageProcessor processor = new ImageProcessor();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long quietPeriod = 2000;
+        List<Path> folders = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--template":
+                    WatermarkSettings template = new ConfigManager().loadTemplate(args[++i]);
+                    if (template == null) {
+                        System.err.println("模板不存在: " + args[i]);
+                        System.exit(1);
+                    }
+                    settings = template;
+                    break;
+                case "--format":
+                    processor.setOutputFormat(args[++i]);
+                    break;
+                case "--quality":
+                    processor.setJpegQuality(Float.parseFloat(args[++i]));
+                    break;
+                case "--max-kb":
+                    processor.setMaxFileSizeKb(Integer.parseInt(args[++i]));
+                    break;
+                case "--max-px":
+                    processor.setMaxDimension(Integer.parseInt(args[++i]));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--quiet":
+                    quietPeriod = Long.parseLong(args[++i]);
+                    break;
+                case "--memory-mb":
+                    MemoryBudget.configureShared(Long.parseLong(args[++i]) << 20);
+                    break;
+                default:
+                    folders.add(Paths.get(args[i]));
+            }
+        }
+
+        // 新文件只处理一次，解码结果不会再用到
+        processor.setImageCache(null);
+        WatchFolderDaemon daemon = new WatchFolderDaemon(folders, outputDir, settings, processor, threads, quietPeriod);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.stop();
+            daemon.awaitStopped(TimeUnit.MINUTES.toMillis(1));
+        }));
+        daemon.run();
+    }
+}
@@ -0,0 +1,211 @@
+package main.java;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 水印布局类
+ * 某一图片尺寸下预先计算好的水印图章及其在图片中的位置；
+ * 平铺模式下图章为图案单元，以(x, y)为起点重复铺满整张图片；
+ * 多图层水印的布局由若干部分按顺序叠加而成
+ */
+public class WatermarkLayout {
+    // 合并后的包围盒面积不超过各图章面积之和的该倍数时才合并为一张叠加图
+    private static final int MERGE_RATIO = 2;
+
+    private final BufferedImage stamp;
+    private final int x;
+    private final int y;
+    private final TexturePaint texture;
+    private final int frameWidth;
+    private final int frameHeight;
+    private final List<WatermarkLayout> parts;
+
+    public WatermarkLayout(BufferedImage stamp, int x, int y) {
+        this.stamp = stamp;
+        this.x = x;
+        this.y = y;
+        this.texture = null;
+        this.frameWidth = 0;
+        this.frameHeight = 0;
+        this.parts = null;
+    }
+
+    private WatermarkLayout(BufferedImage cell, int x, int y, int frameWidth, int frameHeight) {
+        this.stamp = cell;
+        this.x = x;
+        this.y = y;
+        this.texture = new TexturePaint(cell, new Rectangle(x, y, cell.getWidth(), cell.getHeight()));
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.parts = null;
+    }
+
+    private WatermarkLayout(List<WatermarkLayout> parts) {
+        WatermarkLayout first = parts.get(0);
+        this.stamp = first.stamp;
+        this.x = first.x;
+        this.y = first.y;
+        this.texture = null;
+        this.frameWidth = 0;
+        this.frameHeight = 0;
+        this.parts = Collections.unmodifiableList(new ArrayList<>(parts));
+    }
+
+    /**
+     * 按顺序叠加多个布局
+     * @param parts 各部分，先合成的在前
+     * @return 叠加布局；没有部分时返回null，只有一个部分时返回该部分
+     */
+    public static WatermarkLayout stack(List<WatermarkLayout> parts) {
+        if (parts.isEmpty()) {
+            return null;
+        }
+        return parts.size() == 1 ? parts.get(0) : new WatermarkLayout(parts);
+    }
+
+    /**
+     * 把多个图层合并为尽量少的叠加图
+     * 相邻的非平铺图章绘制到同一张叠加图中，每张图片只需合成一次；
+     * 相距较远的图章合并后大部分是透明像素，反而增加合成量，此时分成多组。
+     * 平铺图层铺满整张图片，不参与合并，保持原有的叠加顺序
+     * @param layers 各图层的布局，先合成的在前
+     * @param frameWidth 图片宽度
+     * @param frameHeight 图片高度
+     * @return 合并后的布局，没有可见图层时返回null
+     */
+    public static WatermarkLayout flatten(List<WatermarkLayout> layers, int frameWidth, int frameHeight) {
+        Rectangle frame = new Rectangle(0, 0, frameWidth, frameHeight);
+        List<WatermarkLayout> result = new ArrayList<>();
+        List<WatermarkLayout> group = new ArrayList<>();
+        Rectangle groupBounds = null;
+        long groupArea = 0;
+        for (WatermarkLayout layer : layers) {
+            if (layer.isTiled() || layer.parts != null) {
+                if (!group.isEmpty()) {
+                    result.add(merge(group, groupBounds));
+                    group.clear();
+                    groupBounds = null;
+                    groupArea = 0;
+                }
+                result.add(layer);
+                continue;
+            }
+            Rectangle bounds = new Rectangle(layer.x, layer.y, layer.stamp.getWidth(), layer.stamp.getHeight())
+                    .intersection(frame);
+            if (bounds.isEmpty()) {
+                continue;
+            }
+            long area = (long) bounds.width * bounds.height;
+            if (groupBounds != null) {
+                Rectangle union = groupBounds.union(bounds);
+                if ((long) union.width * union.height > MERGE_RATIO * (groupArea + area)) {
+                    result.add(merge(group, groupBounds));
+                    group.clear();
+                    groupBounds = null;
+                    groupArea = 0;
+                }
+            }
+            group.add(layer);
+            groupBounds = groupBounds == null ? bounds : groupBounds.union(bounds);
+            groupArea += area;
+        }
+        if (!group.isEmpty()) {
+            result.add(merge(group, groupBounds));
+        }
+        return stack(result);
+    }
+
+    /**
+     * 把一组图章按顺序绘制到一张叠加图中，预乘透明度下SRC_OVER满足结合律，结果与逐个合成相同
+     */
+    private static WatermarkLayout merge(List<WatermarkLayout> group, Rectangle bounds) {
+        if (group.size() == 1) {
+            return group.get(0);
+        }
+        BufferedImage overlay = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = overlay.createGraphics();
+        for (WatermarkLayout layer : group) {
+            g2d.drawImage(layer.stamp, layer.x - bounds.x, layer.y - bounds.y, null);
+        }
+        g2d.dispose();
+        return new WatermarkLayout(overlay, bounds.x, bounds.y);
+    }
+
+    /**
+     * 创建平铺布局
+     * @param cell 图案单元
+     * @param x 平铺起点x
+     * @param y 平铺起点y
+     * @param frameWidth 图片宽度
+     * @param frameHeight 图片高度
+     * @return 平铺布局
+     */
+    public static WatermarkLayout tiled(BufferedImage cell, int x, int y, int frameWidth, int frameHeight) {
+        return new WatermarkLayout(cell, x, y, frameWidth, frameHeight);
+    }
+
+    public BufferedImage getStamp() {
+        return stamp;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public boolean isTiled() {
+        return texture != null;
+    }
+
+    /**
+     * 将水印合成到目标图片
+     * 常见像素格式直接在像素数组上合成，其余格式使用Graphics2D
+     * @param target 目标图片
+     */
+    public void composite(BufferedImage target) {
+        if (parts != null) {
+            for (WatermarkLayout part : parts) {
+                part.composite(target);
+            }
+            return;
+        }
+        if (AlphaBlender.supports(target)) {
+            if (texture != null) {
+                AlphaBlender.blendTiled(target, stamp, x, y);
+            } else {
+                AlphaBlender.blend(target, stamp, x, y);
+            }
+            return;
+        }
+        Graphics2D g2d = target.createGraphics();
+        paint(g2d);
+        g2d.dispose();
+    }
+
+    /**
+     * 通过Graphics2D将水印合成到目标图片
+     * @param g2d 目标图片的Graphics2D对象
+     */
+    public void paint(Graphics2D g2d) {
+        if (parts != null) {
+            for (WatermarkLayout part : parts) {
+                part.paint(g2d);
+            }
+        } else if (texture != null) {
+            // 图案单元只渲染一次，由TexturePaint在一次填充中铺满整张图片
+            Paint originalPaint = g2d.getPaint();
+            g2d.setPaint(texture);
+            g2d.fillRect(0, 0, frameWidth, frameHeight);
+            g2d.setPaint(originalPaint);
+        } else {
+            g2d.drawImage(stamp, x, y, null);
+        }
+    }
+}
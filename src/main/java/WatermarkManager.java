@@ -2,10 +2,22 @@ package main.java;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 水印管理类
@@ -14,6 +26,39 @@ import java.io.IOException;
 public class WatermarkManager {
     private WatermarkSettings settings = new WatermarkSettings();
     
+    // 按设置指纹和尺寸缓存的图章与布局，可以由多个管理器共用
+    private final Map<String, WatermarkStamp> stampCache;
+    private final Map<String, WatermarkLayout> layoutCache;
+    private final Map<String, BufferedImage> tileCache;
+    
+    // 最近一次解码的水印图片
+    private BufferedImage watermarkImageCache;
+    private String watermarkImageKey;
+    
+    public WatermarkManager() {
+        this(createLruCache(32), createLruCache(64), createLruCache(8));
+    }
+    
+    private WatermarkManager(Map<String, WatermarkStamp> stampCache, Map<String, WatermarkLayout> layoutCache,
+                             Map<String, BufferedImage> tileCache) {
+        this.stampCache = stampCache;
+        this.layoutCache = layoutCache;
+        this.tileCache = tileCache;
+    }
+    
+    /**
+     * 创建使用指定设置、与本管理器共用图章、布局和平铺单元缓存的管理器
+     * 缓存键由设置指纹和尺寸组成，不同设置的条目互不干扰；
+     * 后台导出使用设置快照的同时，重新导出可以复用预览和上次导出已渲染的图章
+     * @param settings 水印设置
+     * @return 新的管理器
+     */
+    public WatermarkManager withSettings(WatermarkSettings settings) {
+        WatermarkManager manager = new WatermarkManager(stampCache, layoutCache, tileCache);
+        manager.applySettings(settings);
+        return manager;
+    }
+    
     /**
      * 获取水印设置
      * @return 水印设置对象
@@ -28,132 +73,389 @@ public class WatermarkManager {
      * @return 添加水印后的图片
      */
     public BufferedImage applyWatermark(BufferedImage image) {
+        return applyWatermark(image, true);
+    }
+    
+    /**
+     * 应用水印到图片
+     * 结果尽量保持解码得到的像素格式，只做一次整帧复制
+     * @param image 原图片
+     * @param keepAlpha 是否保留透明通道，输出格式不支持透明时传false
+     * @return 添加水印后的图片
+     */
+    public BufferedImage applyWatermark(BufferedImage image, boolean keepAlpha) {
+        return applyWatermark(image, keepAlpha, 1);
+    }
+    
+    /**
+     * 应用水印到图片
+     * 按EXIF方向摆正图片的旋转和翻转在整帧复制时一并完成，不额外复制，
+     * 水印按摆正后的尺寸放置
+     * @param image 原图片
+     * @param keepAlpha 是否保留透明通道，输出格式不支持透明时传false
+     * @param orientation EXIF方向（1-8），1表示无需摆正
+     * @return 添加水印后的图片
+     */
+    public BufferedImage applyWatermark(BufferedImage image, boolean keepAlpha, int orientation) {
         if (image == null) {
             return null;
         }
         
-        // 创建一个新的图像，保留原图像的类型，确保支持透明度
-        BufferedImage result = new BufferedImage(
-                image.getWidth(),
-                image.getHeight(),
-                BufferedImage.TYPE_INT_ARGB
-        );
+        BufferedImage result = copyImage(image, keepAlpha, orientation);
         
-        // 绘制原图
-        Graphics2D g2d = result.createGraphics();
-        g2d.drawImage(image, 0, 0, null);
+        // 合成预先渲染好的水印图章
+        WatermarkLayout layout = getLayout(result);
+        if (layout != null) {
+            layout.composite(result);
+        }
         
-        // 设置渲染提示
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        return result;
+    }
+    
+    /**
+     * 复制图片作为水印绘制目标
+     * 常见的RGB格式直接复制像素数组；索引色、灰度和自定义格式无法正确绘制彩色水印，
+     * 转换为INT_RGB，需要保留透明度时转换为INT_ARGB
+     * @param image 原图片
+     * @param keepAlpha 是否保留透明通道
+     * @param orientation EXIF方向
+     * @return 图片副本
+     */
+    private static BufferedImage copyImage(BufferedImage image, boolean keepAlpha, int orientation) {
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        int type = image.getType();
+        boolean nativeType = type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_INT_BGR
+                || type == BufferedImage.TYPE_3BYTE_BGR
+                || (keepAlpha && (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_4BYTE_ABGR));
+        if (orientation < 1 || orientation > 8) {
+            orientation = 1;
+        }
         
-        // 根据水印类型应用水印
-        if (settings.getType() == WatermarkType.TEXT) {
-            applyTextWatermark(g2d, image.getWidth(), image.getHeight());
-        } else {
-            applyImageWatermark(g2d, image.getWidth(), image.getHeight());
+        if (nativeType) {
+            WritableRaster raster = image.getRaster();
+            DataBuffer buffer = raster.getDataBuffer();
+            if (buffer.getNumBanks() == 1 && buffer.getOffset() == 0
+                    && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0) {
+                if (orientation != 1) {
+                    return new BufferedImage(image.getColorModel(), reorient(raster, orientation),
+                            image.isAlphaPremultiplied(), null);
+                }
+                // 整块复制像素数组
+                DataBuffer copy;
+                if (buffer instanceof DataBufferInt) {
+                    copy = new DataBufferInt(((DataBufferInt) buffer).getData().clone(), buffer.getSize());
+                } else {
+                    copy = new DataBufferByte(((DataBufferByte) buffer).getData().clone(), buffer.getSize());
+                }
+                WritableRaster copyRaster = Raster.createWritableRaster(raster.getSampleModel(), copy, null);
+                return new BufferedImage(image.getColorModel(), copyRaster, image.isAlphaPremultiplied(), null);
+            }
+            if (orientation == 1) {
+                return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+            }
         }
         
+        boolean swap = orientation >= 5;
+        BufferedImage result = new BufferedImage(
+                swap ? image.getHeight() : image.getWidth(),
+                swap ? image.getWidth() : image.getHeight(),
+                keepAlpha && hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
+        );
+        Graphics2D g2d = result.createGraphics();
+        g2d.drawImage(image, ImageMetadata.transformFor(orientation, image.getWidth(), image.getHeight()), null);
         g2d.dispose();
         return result;
     }
     
     /**
-     * 应用文本水印
-     * @param g2d Graphics2D对象
-     * @param width 图片宽度
-     * @param height 图片高度
+     * 按EXIF方向重排像素，得到摆正后的栅格
+     * 逐行读取原图，每个像素在目标数组中的位置随x线性变化，只需一次遍历
+     * @param raster 单块、无偏移的INT或交错BYTE栅格
+     * @param orientation EXIF方向（2-8）
+     * @return 摆正后的栅格
      */
-    private void applyTextWatermark(Graphics2D g2d, int width, int height) {
-        // 创建字体
-        Font font = new Font(settings.getFontName(), settings.getFontStyle(), settings.getFontSize());
-        g2d.setFont(font);
+    private static WritableRaster reorient(WritableRaster raster, int orientation) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        boolean swap = orientation >= 5;
+        int targetWidth = swap ? height : width;
+        int targetHeight = swap ? width : height;
+        WritableRaster target = raster.createCompatibleWritableRaster(targetWidth, targetHeight);
         
-        // 获取文本尺寸
-        FontMetrics metrics = g2d.getFontMetrics(font);
-        int textWidth = metrics.stringWidth(settings.getText());
-        int textHeight = metrics.getHeight();
-        
-        // 计算位置
-        int x = (width - textWidth) * settings.getPositionX() / 100;
-        int y = (height - textHeight) * settings.getPositionY() / 100 + metrics.getAscent();
-        
-        // 保存当前变换
-        AffineTransform originalTransform = g2d.getTransform();
-        
-        // 应用旋转
-        if (settings.getRotation() != 0) {
-            g2d.rotate(Math.toRadians(settings.getRotation()), x + textWidth / 2, y - textHeight / 2);
+        // 目标坐标 tx = x0 + x*xx + y*xy，ty = y0 + x*yx + y*yy
+        int x0 = 0, xx = 1, xy = 0, y0 = 0, yx = 0, yy = 1;
+        switch (orientation) {
+            case 2: x0 = width - 1; xx = -1; break;
+            case 3: x0 = width - 1; xx = -1; y0 = height - 1; yy = -1; break;
+            case 4: y0 = height - 1; yy = -1; break;
+            case 5: xx = 0; xy = 1; yx = 1; yy = 0; break;
+            case 6: x0 = height - 1; xx = 0; xy = -1; yx = 1; yy = 0; break;
+            case 7: x0 = height - 1; xx = 0; xy = -1; y0 = width - 1; yx = -1; yy = 0; break;
+            case 8: xx = 0; xy = 1; y0 = width - 1; yx = -1; yy = 0; break;
+            default: break;
         }
         
-        // 设置透明度
-        AlphaComposite alphaComposite = AlphaComposite.getInstance(
-                AlphaComposite.SRC_OVER, settings.getTextOpacity());
-        g2d.setComposite(alphaComposite);
+        SampleModel sourceModel = raster.getSampleModel();
+        SampleModel targetModel = target.getSampleModel();
+        if (raster.getDataBuffer() instanceof DataBufferInt) {
+            int[] source = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int[] pixels = ((DataBufferInt) target.getDataBuffer()).getData();
+            int sourceStride = ((SinglePixelPackedSampleModel) sourceModel).getScanlineStride();
+            int targetStride = ((SinglePixelPackedSampleModel) targetModel).getScanlineStride();
+            int step = xx + yx * targetStride;
+            for (int y = 0; y < height; y++) {
+                int in = y * sourceStride;
+                int out = (y0 + y * yy) * targetStride + x0 + y * xy;
+                for (int x = 0; x < width; x++, out += step) {
+                    pixels[out] = source[in + x];
+                }
+            }
+        } else {
+            byte[] source = ((DataBufferByte) raster.getDataBuffer()).getData();
+            byte[] pixels = ((DataBufferByte) target.getDataBuffer()).getData();
+            PixelInterleavedSampleModel sourceLayout = (PixelInterleavedSampleModel) sourceModel;
+            PixelInterleavedSampleModel targetLayout = (PixelInterleavedSampleModel) targetModel;
+            int bytes = sourceLayout.getPixelStride();
+            int sourceStride = sourceLayout.getScanlineStride();
+            int targetStride = targetLayout.getScanlineStride();
+            int step = xx * bytes + yx * targetStride;
+            for (int y = 0; y < height; y++) {
+                int in = y * sourceStride;
+                int out = (y0 + y * yy) * targetStride + (x0 + y * xy) * bytes;
+                for (int x = 0; x < width; x++, in += bytes, out += step) {
+                    for (int b = 0; b < bytes; b++) {
+                        pixels[out + b] = source[in + b];
+                    }
+                }
+            }
+        }
+        return target;
+    }
+    
+    /**
+     * 获取指定图片的水印布局
+     * 自动放置模式下按图片内容计算，其余模式只与图片尺寸有关；
+     * 多图层时固定图层使用按尺寸缓存的合并结果，自动放置的图层逐张计算后叠加在最上面
+     * @param image 已摆正的图片，只读取不修改
+     * @return 水印布局，无法生成水印时返回null
+     */
+    public WatermarkLayout getLayout(BufferedImage image) {
+        WatermarkSettings current = settings;
+        if (!current.hasAutoPlacement()) {
+            return getLayout(image.getWidth(), image.getHeight());
+        }
+        if (current.getLayers().isEmpty()) {
+            return createAutoLayout(current, image);
+        }
+        List<WatermarkLayout> parts = new ArrayList<>();
+        WatermarkLayout fixed = getLayout(image.getWidth(), image.getHeight());
+        if (fixed != null) {
+            parts.add(fixed);
+        }
+        for (WatermarkSettings mark : marksOf(current)) {
+            if (mark.getPlacementMode() == PlacementMode.AUTO) {
+                WatermarkLayout auto = createAutoLayout(mark, image);
+                if (auto != null) {
+                    parts.add(auto);
+                }
+            }
+        }
+        return WatermarkLayout.stack(parts);
+    }
+    
+    /**
+     * 获取指定图片尺寸下的水印布局
+     * 同一设置下每种尺寸只计算一次，字号或缩放结果相同的尺寸共用同一图章；
+     * 多图层时各固定图层合并为一张叠加图一起缓存，每张图片的合成次数与单个水印相同
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @return 水印布局，无法生成水印时返回null
+     */
+    public WatermarkLayout getLayout(int width, int height) {
+        WatermarkSettings current = settings;
+        if (current.getLayers().isEmpty()) {
+            return getMarkLayout(current, width, height);
+        }
+        String key = current.fingerprint() + "@" + width + "x" + height;
+        WatermarkLayout layout = layoutCache.get(key);
+        if (layout == null) {
+            List<WatermarkLayout> parts = new ArrayList<>();
+            for (WatermarkSettings mark : marksOf(current)) {
+                if (mark.getPlacementMode() != PlacementMode.AUTO) {
+                    WatermarkLayout part = getMarkLayout(mark, width, height);
+                    if (part != null) {
+                        parts.add(part);
+                    }
+                }
+            }
+            layout = WatermarkLayout.flatten(parts, width, height);
+            if (layout != null) {
+                layoutCache.put(key, layout);
+            }
+        }
+        return layout;
+    }
+    
+    /**
+     * 获取单个水印（不含附加图层）在指定图片尺寸下的布局
+     */
+    private WatermarkLayout getMarkLayout(WatermarkSettings mark, int width, int height) {
+        String key = mark.markFingerprint() + "@" + width + "x" + height;
+        WatermarkLayout layout = layoutCache.get(key);
+        if (layout == null) {
+            layout = mark.getType() == WatermarkType.TEXT
+                    ? createTextLayout(mark, width, height)
+                    : createImageLayout(mark, width, height);
+            if (layout != null) {
+                layoutCache.put(key, layout);
+            }
+        }
+        return layout;
+    }
+    
+    /**
+     * 按叠加顺序列出本水印和各附加图层
+     */
+    private static List<WatermarkSettings> marksOf(WatermarkSettings current) {
+        List<WatermarkSettings> marks = new ArrayList<>();
+        marks.add(current);
+        marks.addAll(current.getLayers());
+        return marks;
+    }
+    
+    /**
+     * 计算文本水印布局
+     */
+    private WatermarkLayout createTextLayout(WatermarkSettings current, int width, int height) {
+        int fontSize = current.resolveFontSize(width, height);
+        TextRenderCache.TextLayoutInfo text = TextRenderCache.getLayout(
+                current.getFontName(), current.getFontStyle(), fontSize, current.getText());
+        String stampKey = current.stampFingerprint() + "#" + fontSize;
+        WatermarkStamp stamp = stampCache.computeIfAbsent(stampKey,
+                k -> WatermarkStamp.renderText(current, fontSize));
         
-        // 如果启用阴影
-        if (settings.isEnableShadow()) {
-            g2d.setColor(settings.getShadowColor());
-            g2d.drawString(settings.getText(), x + 2, y + 2);
+        // 与原有绘制方式一致：以文本中心附近为旋转中心
+        int x = (width - text.width) * current.getPositionX() / 100;
+        int y = (height - text.height) * current.getPositionY() / 100 + text.ascent;
+        int centerX = x + text.width / 2;
+        int centerY = y - text.height / 2;
+        return placeStamp(current, stampKey, stamp, centerX, centerY, width, height);
+    }
+    
+    /**
+     * 计算图片水印布局
+     */
+    private WatermarkLayout createImageLayout(WatermarkSettings current, int width, int height) {
+        BufferedImage watermarkImg = loadWatermarkImage(current.getWatermarkImage());
+        if (watermarkImg == null) {
+            return null;
         }
         
-        // 绘制文本
-        g2d.setColor(settings.getTextColor());
-        g2d.drawString(settings.getText(), x, y);
+        // 计算缩放后的尺寸
+        float scale = current.resolveImageScale(width, height, watermarkImg.getWidth(), watermarkImg.getHeight());
+        int wmWidth = (int) (watermarkImg.getWidth() * scale);
+        int wmHeight = (int) (watermarkImg.getHeight() * scale);
+        if (wmWidth <= 0 || wmHeight <= 0) {
+            return null;
+        }
+        String stampKey = current.stampFingerprint() + "#" + wmWidth + "x" + wmHeight;
+        WatermarkStamp stamp = stampCache.computeIfAbsent(stampKey,
+                k -> WatermarkStamp.renderImage(watermarkImg, wmWidth, wmHeight,
+                        current.getImageOpacity(), current.getRotation()));
         
-        // 恢复原始变换
-        g2d.setTransform(originalTransform);
+        // 计算位置
+        int x = (width - wmWidth) * current.getPositionX() / 100;
+        int y = (height - wmHeight) * current.getPositionY() / 100;
+        int centerX = x + wmWidth / 2;
+        int centerY = y + wmHeight / 2;
+        return placeStamp(current, stampKey, stamp, centerX, centerY, width, height);
     }
     
     /**
-     * 应用图片水印
-     * @param g2d Graphics2D对象
-     * @param width 图片宽度
-     * @param height 图片高度
+     * 计算自动放置的布局
+     * 图章与固定位置时相同，只是位置按图片内容选择；文本水印的颜色与所选区域对比度不足时
+     * 改用黑色或白色，不同颜色的图章同样缓存
      */
-    private void applyImageWatermark(Graphics2D g2d, int width, int height) {
-        if (settings.getWatermarkImage() == null || !settings.getWatermarkImage().exists()) {
-            return;
+    private WatermarkLayout createAutoLayout(WatermarkSettings current, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        WatermarkLayout fixed = getMarkLayout(current, width, height);
+        if (fixed == null) {
+            return null;
+        }
+        BufferedImage stamp = fixed.getStamp();
+        PlacementAnalyzer analyzer = PlacementAnalyzer.analyze(image);
+        Point position = analyzer.findCalmestPosition(stamp.getWidth(), stamp.getHeight(),
+                current.getPositionX(), current.getPositionY());
+        if (current.getType() != WatermarkType.TEXT) {
+            return new WatermarkLayout(stamp, position.x, position.y);
         }
         
-        try {
-            // 加载水印图片
-            BufferedImage watermarkImg = ImageIO.read(settings.getWatermarkImage());
-            if (watermarkImg == null) {
-                return;
-            }
-            
-            // 计算缩放后的尺寸
-            int wmWidth = (int) (watermarkImg.getWidth() * settings.getImageScale());
-            int wmHeight = (int) (watermarkImg.getHeight() * settings.getImageScale());
-            
-            // 计算位置
-            int x = (width - wmWidth) * settings.getPositionX() / 100;
-            int y = (height - wmHeight) * settings.getPositionY() / 100;
-            
-            // 保存当前变换
-            AffineTransform originalTransform = g2d.getTransform();
-            
-            // 应用旋转
-            if (settings.getRotation() != 0) {
-                g2d.rotate(Math.toRadians(settings.getRotation()), x + wmWidth / 2, y + wmHeight / 2);
+        Color color = PlacementAnalyzer.chooseTextColor(current.getTextColor(),
+                analyzer.meanLuminance(position.x, position.y, stamp.getWidth(), stamp.getHeight()));
+        if (color.equals(current.getTextColor())) {
+            return new WatermarkLayout(stamp, position.x, position.y);
+        }
+        int fontSize = current.resolveFontSize(width, height);
+        WatermarkStamp recolored = stampCache.computeIfAbsent(
+                current.stampFingerprint() + "#" + fontSize + "#" + Integer.toHexString(color.getRGB()), k -> {
+                    WatermarkSettings variant = current.copy();
+                    variant.setTextColor(color);
+                    return WatermarkStamp.renderText(variant, fontSize);
+                });
+        return new WatermarkLayout(recolored.getImage(), position.x, position.y);
+    }
+    
+    /**
+     * 按放置模式生成布局
+     * 平铺模式下图案单元按图章和间距缓存，不同尺寸的图片共用同一单元
+     */
+    private WatermarkLayout placeStamp(WatermarkSettings current, String stampKey, WatermarkStamp stamp,
+                                       int centerX, int centerY, int width, int height) {
+        if (current.getPlacementMode() == PlacementMode.TILED) {
+            int spacing = current.getTileSpacing();
+            BufferedImage cell = tileCache.computeIfAbsent(stampKey + "~" + spacing,
+                    k -> stamp.createTileCell(spacing));
+            return WatermarkLayout.tiled(cell, 0, 0, width, height);
+        }
+        return new WatermarkLayout(stamp.getImage(), centerX + stamp.getOriginX(), centerY + stamp.getOriginY());
+    }
+    
+    /**
+     * 加载水印图片，文件未变化时复用上次的解码结果
+     * @param file 水印图片文件
+     * @return 水印图片，无法加载时返回null
+     */
+    private synchronized BufferedImage loadWatermarkImage(File file) {
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        if (!key.equals(watermarkImageKey)) {
+            try {
+                watermarkImageCache = ImageIO.read(file);
+                watermarkImageKey = key;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
             }
-            
-            // 设置透明度
-            AlphaComposite alphaComposite = AlphaComposite.getInstance(
-                    AlphaComposite.SRC_OVER, settings.getImageOpacity());
-            g2d.setComposite(alphaComposite);
-            
-            // 绘制水印图片
-            g2d.drawImage(watermarkImg, x, y, wmWidth, wmHeight, null);
-            
-            // 恢复原始变换
-            g2d.setTransform(originalTransform);
-            
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        return watermarkImageCache;
+    }
+    
+    /**
+     * 创建按访问顺序淘汰的线程安全缓存
+     * @param maxEntries 最大条目数
+     * @return 缓存
+     */
+    private static <K, V> Map<K, V> createLruCache(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
     }
     
     /**
@@ -3,6 +3,13 @@ package main.java;
 import java.awt.*;
 import java.io.File;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 水印设置类
@@ -24,6 +31,11 @@ public class WatermarkSettings implements Serializable {
     private float textOpacity = 0.7f;
     private boolean enableShadow = false;
     private Color shadowColor = Color.WHITE;
+    private int shadowBlur = 0;              // 阴影模糊半径（像素），0为硬阴影
+    private int outlineWidth = 0;            // 描边宽度（像素），0为不描边
+    private Color outlineColor = Color.WHITE;
+    private int glowRadius = 0;              // 外发光半径（像素），0为不发光
+    private Color glowColor = Color.WHITE;
     
     // 图片水印设置
     private File watermarkImage = null;
@@ -35,11 +47,37 @@ public class WatermarkSettings implements Serializable {
     private int positionX = 50; // 百分比位置 (0-100)
     private int positionY = 50; // 百分比位置 (0-100)
     private int rotation = 0;   // 旋转角度 (0-360)
+    private PlacementMode placementMode = PlacementMode.FIXED;
+    private int tileSpacing = 50; // 平铺间距，占水印尺寸的百分比
+    
+    // 尺寸设置
+    private SizeMode sizeMode = SizeMode.ABSOLUTE;
+    private float relativeTextSize = 5.0f;   // 字号占图片短边的百分比
+    private float relativeImageSize = 20.0f; // 水印图片长边占图片短边的百分比
+    
+    // 附加图层，按顺序叠加在本水印之上，每个图层有独立的类型、位置、旋转和透明度
+    private ArrayList<WatermarkSettings> layers = new ArrayList<>();
     
     // 构造函数
     public WatermarkSettings() {
     }
     
+    /**
+     * 旧版本序列化数据中没有的新字段在反序列化后为零值，此处补齐默认值
+     * @return 修正后的对象
+     */
+    private Object readResolve() {
+        if (sizeMode == null) sizeMode = SizeMode.ABSOLUTE;
+        if (outlineColor == null) outlineColor = Color.WHITE;
+        if (glowColor == null) glowColor = Color.WHITE;
+        if (relativeTextSize <= 0) relativeTextSize = 5.0f;
+        if (relativeImageSize <= 0) relativeImageSize = 20.0f;
+        if (placementMode == null) placementMode = PlacementMode.FIXED;
+        if (tileSpacing <= 0) tileSpacing = 50;
+        if (layers == null) layers = new ArrayList<>();
+        return this;
+    }
+    
     // Getters and Setters
     
     public WatermarkType getType() {
@@ -122,6 +160,46 @@ public class WatermarkSettings implements Serializable {
         this.shadowColor = shadowColor;
     }
     
+    public int getShadowBlur() {
+        return shadowBlur;
+    }
+    
+    public void setShadowBlur(int shadowBlur) {
+        this.shadowBlur = Math.max(0, shadowBlur);
+    }
+    
+    public int getOutlineWidth() {
+        return outlineWidth;
+    }
+    
+    public void setOutlineWidth(int outlineWidth) {
+        this.outlineWidth = Math.max(0, outlineWidth);
+    }
+    
+    public Color getOutlineColor() {
+        return outlineColor;
+    }
+    
+    public void setOutlineColor(Color outlineColor) {
+        this.outlineColor = outlineColor;
+    }
+    
+    public int getGlowRadius() {
+        return glowRadius;
+    }
+    
+    public void setGlowRadius(int glowRadius) {
+        this.glowRadius = Math.max(0, glowRadius);
+    }
+    
+    public Color getGlowColor() {
+        return glowColor;
+    }
+    
+    public void setGlowColor(Color glowColor) {
+        this.glowColor = glowColor;
+    }
+    
     public File getWatermarkImage() {
         return watermarkImage;
     }
@@ -181,6 +259,112 @@ public class WatermarkSettings implements Serializable {
         this.rotation = rotation;
     }
     
+    public PlacementMode getPlacementMode() {
+        return placementMode;
+    }
+    
+    public void setPlacementMode(PlacementMode placementMode) {
+        this.placementMode = placementMode;
+    }
+    
+    public int getTileSpacing() {
+        return tileSpacing;
+    }
+    
+    public void setTileSpacing(int tileSpacing) {
+        this.tileSpacing = tileSpacing;
+    }
+    
+    public SizeMode getSizeMode() {
+        return sizeMode;
+    }
+    
+    public void setSizeMode(SizeMode sizeMode) {
+        this.sizeMode = sizeMode;
+    }
+    
+    public float getRelativeTextSize() {
+        return relativeTextSize;
+    }
+    
+    public void setRelativeTextSize(float relativeTextSize) {
+        this.relativeTextSize = relativeTextSize;
+    }
+    
+    public float getRelativeImageSize() {
+        return relativeImageSize;
+    }
+    
+    public void setRelativeImageSize(float relativeImageSize) {
+        this.relativeImageSize = relativeImageSize;
+    }
+    
+    /**
+     * 获取附加图层，返回的列表可以直接修改
+     * @return 附加图层列表，不含本水印
+     */
+    public List<WatermarkSettings> getLayers() {
+        return layers;
+    }
+    
+    /**
+     * 检查本水印或任一附加图层是否使用自动放置
+     * @return 需要按图片内容计算布局时返回true
+     */
+    public boolean hasAutoPlacement() {
+        if (placementMode == PlacementMode.AUTO) {
+            return true;
+        }
+        for (WatermarkSettings layer : layers) {
+            if (layer.hasAutoPlacement()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 计算指定图片尺寸下实际使用的字号
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @return 字号
+     */
+    public int resolveFontSize(int width, int height) {
+        if (sizeMode == SizeMode.RELATIVE) {
+            return Math.max(1, Math.round(Math.min(width, height) * relativeTextSize / 100));
+        }
+        return fontSize;
+    }
+    
+    /**
+     * 计算文字效果（描边、阴影、外发光）的缩放比例
+     * 效果尺寸按设定字号下的像素数设置，相对尺寸模式下随实际字号等比缩放，
+     * 不同分辨率的输出和预览中效果与文字的比例一致
+     * @param resolvedFontSize 实际字号
+     * @return 缩放比例，绝对尺寸模式下为1
+     */
+    public float resolveEffectScale(int resolvedFontSize) {
+        if (sizeMode == SizeMode.RELATIVE && fontSize > 0) {
+            return (float) resolvedFontSize / fontSize;
+        }
+        return 1f;
+    }
+    
+    /**
+     * 计算指定图片尺寸下水印图片的缩放比例
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @param logoWidth 水印图片原始宽度
+     * @param logoHeight 水印图片原始高度
+     * @return 缩放比例
+     */
+    public float resolveImageScale(int width, int height, int logoWidth, int logoHeight) {
+        if (sizeMode == SizeMode.RELATIVE) {
+            return Math.min(width, height) * relativeImageSize / 100 / Math.max(logoWidth, logoHeight);
+        }
+        return imageScale;
+    }
+    
     // 获取字体样式
     public int getFontStyle() {
         int style = Font.PLAIN;
@@ -188,4 +372,250 @@ public class WatermarkSettings implements Serializable {
         if (italic) style |= Font.ITALIC;
         return style;
     }
-}
\ No newline at end of file
+    
+    /**
+     * 将设置导出为键值对
+     * 模板存储和设置指纹都基于该表示，新增字段时只需在此处和fromMap中同步
+     * @return 有序的键值对
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("type", type.name());
+        map.put("text", text);
+        map.put("fontName", fontName);
+        map.put("fontSize", String.valueOf(fontSize));
+        map.put("bold", String.valueOf(bold));
+        map.put("italic", String.valueOf(italic));
+        map.put("textColor", String.valueOf(textColor.getRGB()));
+        map.put("textOpacity", String.valueOf(textOpacity));
+        map.put("enableShadow", String.valueOf(enableShadow));
+        map.put("shadowColor", String.valueOf(shadowColor.getRGB()));
+        map.put("shadowBlur", String.valueOf(shadowBlur));
+        map.put("outlineWidth", String.valueOf(outlineWidth));
+        map.put("outlineColor", String.valueOf(outlineColor.getRGB()));
+        map.put("glowRadius", String.valueOf(glowRadius));
+        map.put("glowColor", String.valueOf(glowColor.getRGB()));
+        if (watermarkImage != null) {
+            map.put("watermarkImage", watermarkImage.getAbsolutePath());
+        }
+        map.put("imageScale", String.valueOf(imageScale));
+        map.put("imageOpacity", String.valueOf(imageOpacity));
+        map.put("positionX", String.valueOf(positionX));
+        map.put("positionY", String.valueOf(positionY));
+        map.put("rotation", String.valueOf(rotation));
+        map.put("placementMode", placementMode.name());
+        map.put("tileSpacing", String.valueOf(tileSpacing));
+        map.put("sizeMode", sizeMode.name());
+        map.put("relativeTextSize", String.valueOf(relativeTextSize));
+        map.put("relativeImageSize", String.valueOf(relativeImageSize));
+        // 图层的字段加上"layer序号."前缀平铺在同一张表中
+        if (!layers.isEmpty()) {
+            map.put("layerCount", String.valueOf(layers.size()));
+            for (int i = 0; i < layers.size(); i++) {
+                String prefix = "layer" + (i + 1) + ".";
+                for (Map.Entry<String, String> entry : layers.get(i).toMap().entrySet()) {
+                    map.put(prefix + entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return map;
+    }
+    
+    /**
+     * 从键值对恢复设置
+     * 缺失或无法解析的字段保留默认值，未知字段被忽略，以兼容不同版本的模板
+     * @param map 键值对
+     * @return 水印设置
+     */
+    public static WatermarkSettings fromMap(Map<String, String> map) {
+        WatermarkSettings settings = new WatermarkSettings();
+        try {
+            if (map.containsKey("type")) settings.type = WatermarkType.valueOf(map.get("type"));
+        } catch (IllegalArgumentException ignored) {
+            // 未知的水印类型，使用默认值
+        }
+        if (map.containsKey("text")) settings.text = map.get("text");
+        if (map.containsKey("fontName")) settings.fontName = map.get("fontName");
+        settings.fontSize = parseInt(map.get("fontSize"), settings.fontSize);
+        if (map.containsKey("bold")) settings.bold = Boolean.parseBoolean(map.get("bold"));
+        if (map.containsKey("italic")) settings.italic = Boolean.parseBoolean(map.get("italic"));
+        settings.textColor = new Color(parseInt(map.get("textColor"), settings.textColor.getRGB()), true);
+        settings.textOpacity = parseFloat(map.get("textOpacity"), settings.textOpacity);
+        if (map.containsKey("enableShadow")) settings.enableShadow = Boolean.parseBoolean(map.get("enableShadow"));
+        settings.shadowColor = new Color(parseInt(map.get("shadowColor"), settings.shadowColor.getRGB()), true);
+        settings.shadowBlur = Math.max(0, parseInt(map.get("shadowBlur"), settings.shadowBlur));
+        settings.outlineWidth = Math.max(0, parseInt(map.get("outlineWidth"), settings.outlineWidth));
+        settings.outlineColor = new Color(parseInt(map.get("outlineColor"), settings.outlineColor.getRGB()), true);
+        settings.glowRadius = Math.max(0, parseInt(map.get("glowRadius"), settings.glowRadius));
+        settings.glowColor = new Color(parseInt(map.get("glowColor"), settings.glowColor.getRGB()), true);
+        if (map.containsKey("watermarkImage")) settings.setWatermarkImagePath(map.get("watermarkImage"));
+        settings.imageScale = parseFloat(map.get("imageScale"), settings.imageScale);
+        settings.imageOpacity = parseFloat(map.get("imageOpacity"), settings.imageOpacity);
+        settings.positionX = parseInt(map.get("positionX"), settings.positionX);
+        settings.positionY = parseInt(map.get("positionY"), settings.positionY);
+        settings.rotation = parseInt(map.get("rotation"), settings.rotation);
+        try {
+            if (map.containsKey("placementMode")) settings.placementMode = PlacementMode.valueOf(map.get("placementMode"));
+        } catch (IllegalArgumentException ignored) {
+            // 未知的放置模式，使用默认值
+        }
+        settings.tileSpacing = parseInt(map.get("tileSpacing"), settings.tileSpacing);
+        try {
+            if (map.containsKey("sizeMode")) settings.sizeMode = SizeMode.valueOf(map.get("sizeMode"));
+        } catch (IllegalArgumentException ignored) {
+            // 未知的尺寸模式，使用默认值
+        }
+        settings.relativeTextSize = parseFloat(map.get("relativeTextSize"), settings.relativeTextSize);
+        settings.relativeImageSize = parseFloat(map.get("relativeImageSize"), settings.relativeImageSize);
+        int layerCount = parseInt(map.get("layerCount"), 0);
+        for (int i = 1; i <= layerCount; i++) {
+            String prefix = "layer" + i + ".";
+            Map<String, String> layerMap = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    layerMap.put(entry.getKey().substring(prefix.length()), entry.getValue());
+                }
+            }
+            settings.layers.add(fromMap(layerMap));
+        }
+        return settings;
+    }
+    
+    /**
+     * 复制当前设置
+     * @return 独立的设置副本
+     */
+    public WatermarkSettings copy() {
+        return fromMap(toMap());
+    }
+    
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    private static float parseFloat(String value, float defaultValue) {
+        try {
+            return value == null ? defaultValue : Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * 计算设置指纹
+     * 只包含当前水印类型和模式下会影响渲染结果的字段，例如文本水印时的图片透明度、
+     * 关闭阴影时的阴影颜色、非平铺模式下的平铺间距都不参与计算，
+     * 修改这些字段不会使已导出的文件和缓存的布局失效。附加图层的指纹同样参与计算
+     * @return 十六进制指纹字符串
+     */
+    public String fingerprint() {
+        if (layers.isEmpty()) {
+            return markFingerprint();
+        }
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("mark", markFingerprint());
+        for (int i = 0; i < layers.size(); i++) {
+            fields.put("layer" + (i + 1), layers.get(i).fingerprint());
+        }
+        return digest(fields);
+    }
+    
+    /**
+     * 计算本水印自身的指纹，不含附加图层
+     * @return 十六进制指纹字符串
+     */
+    public String markFingerprint() {
+        Map<String, String> fields = stampFields();
+        fields.put("placementMode", placementMode.name());
+        fields.put("sizeMode", sizeMode.name());
+        if (placementMode == PlacementMode.TILED) {
+            fields.put("tileSpacing", String.valueOf(tileSpacing));
+        } else {
+            // 自动放置时设定位置作为偏好位置使用
+            fields.put("positionX", String.valueOf(positionX));
+            fields.put("positionY", String.valueOf(positionY));
+        }
+        boolean relative = sizeMode == SizeMode.RELATIVE;
+        if (type == WatermarkType.TEXT) {
+            fields.put(relative ? "relativeTextSize" : "fontSize",
+                    relative ? String.valueOf(relativeTextSize) : String.valueOf(fontSize));
+        } else {
+            fields.put(relative ? "relativeImageSize" : "imageScale",
+                    relative ? String.valueOf(relativeImageSize) : String.valueOf(imageScale));
+        }
+        return digest(fields);
+    }
+    
+    /**
+     * 计算图章指纹
+     * 只包含决定图章外观的字段，不含位置、放置模式和尺寸设置（字号或缩放后尺寸由调用方另行区分），
+     * 移动水印或调整平铺间距时可以复用已渲染的图章
+     * @return 十六进制指纹字符串
+     */
+    public String stampFingerprint() {
+        return digest(stampFields());
+    }
+    
+    /**
+     * 决定图章外观的字段
+     */
+    private Map<String, String> stampFields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("type", type.name());
+        fields.put("rotation", String.valueOf(rotation));
+        if (type == WatermarkType.TEXT) {
+            fields.put("text", text);
+            fields.put("fontName", fontName);
+            fields.put("fontStyle", String.valueOf(getFontStyle()));
+            fields.put("textColor", String.valueOf(textColor.getRGB()));
+            fields.put("textOpacity", String.valueOf(textOpacity));
+            fields.put("enableShadow", String.valueOf(enableShadow));
+            if (enableShadow) {
+                fields.put("shadowColor", String.valueOf(shadowColor.getRGB()));
+                fields.put("shadowBlur", String.valueOf(shadowBlur));
+            }
+            if (outlineWidth > 0) {
+                fields.put("outlineWidth", String.valueOf(outlineWidth));
+                fields.put("outlineColor", String.valueOf(outlineColor.getRGB()));
+            }
+            if (glowRadius > 0) {
+                fields.put("glowRadius", String.valueOf(glowRadius));
+                fields.put("glowColor", String.valueOf(glowColor.getRGB()));
+            }
+            if (sizeMode == SizeMode.RELATIVE && (enableShadow || outlineWidth > 0 || glowRadius > 0)) {
+                // 相对尺寸模式下效果按实际字号与设定字号之比缩放
+                fields.put("effectFontSize", String.valueOf(fontSize));
+            }
+        } else {
+            fields.put("imageOpacity", String.valueOf(imageOpacity));
+            if (watermarkImage != null) {
+                // 水印图片内容变化同样需要重新渲染
+                fields.put("watermarkImage", watermarkImage.getAbsolutePath() + "|"
+                        + watermarkImage.length() + "|" + watermarkImage.lastModified());
+            }
+        }
+        return fields;
+    }
+    
+    private static String digest(Map<String, String> fields) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append('|');
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package main.java;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.function.BiConsumer;
+
+/**
+ * 水印图章类
+ * 预先渲染好的水印位图（已包含旋转、透明度、阴影、描边和外发光），像素为预乘透明度格式，
+ * 同一设置和尺寸下的所有图片共用同一图章，每张图片只需一次合成
+ */
+public class WatermarkStamp {
+    // 阴影相对于文字的偏移（像素），柔和阴影再加上模糊半径的一半
+    private static final int SHADOW_OFFSET = 2;
+    // 外发光的覆盖率放大倍数，模糊后的细笔画边缘过淡
+    private static final float GLOW_GAIN = 2f;
+
+    private final BufferedImage image;
+    private final int originX; // 图章左上角相对于旋转中心的偏移
+    private final int originY;
+
+    private WatermarkStamp(BufferedImage image, int originX, int originY) {
+        this.image = image;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * 生成平铺用的图案单元
+     * 单元高度为两行，第二行水平错开半个单元，平铺后形成斜向交错的图案
+     * @param spacingPercent 水印间距，占图章尺寸的百分比
+     * @return 图案单元
+     */
+    public BufferedImage createTileCell(int spacingPercent) {
+        int cellWidth = image.getWidth() + image.getWidth() * spacingPercent / 100;
+        int cellHeight = image.getHeight() + image.getHeight() * spacingPercent / 100;
+        BufferedImage cell = new BufferedImage(cellWidth, cellHeight * 2, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = cell.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        // 错开的一行在单元右边界处被截断，左侧补画剩余部分以保证无缝
+        g2d.drawImage(image, cellWidth / 2, cellHeight, null);
+        g2d.drawImage(image, cellWidth / 2 - cellWidth, cellHeight, null);
+        g2d.dispose();
+        return cell;
+    }
+    
+    /**
+     * 渲染文本水印图章
+     * 图层从下到上依次为外发光、阴影、描边和文字，先以不透明方式绘制再整体乘以透明度，
+     * 重叠处不会透出下层。外发光和柔和阴影由文字遮罩模糊得到，只在生成图章时计算一次
+     * 相对尺寸模式下描边宽度、阴影偏移和模糊半径、外发光半径随实际字号缩放
+     * @param settings 水印设置
+     * @param fontSize 实际字号
+     * @return 文本图章，旋转中心与原有绘制方式一致
+     */
+    public static WatermarkStamp renderText(WatermarkSettings settings, int fontSize) {
+        TextRenderCache.TextLayoutInfo layout = TextRenderCache.getLayout(
+                settings.getFontName(), settings.getFontStyle(), fontSize, settings.getText());
+        // 基线起点相对于旋转中心的位置
+        int baseX = -(layout.width / 2);
+        int baseY = layout.height / 2;
+        Shape text = AffineTransform.getTranslateInstance(baseX, baseY).createTransformedShape(layout.outline);
+
+        Rectangle2D body = new Rectangle2D.Double(baseX, baseY - layout.ascent, layout.width, layout.height);
+        body.add(text.getBounds2D());
+        float effectScale = settings.resolveEffectScale(fontSize);
+        // 描边以轮廓为中心，向外扩展描边宽度
+        float outlineWidth = settings.getOutlineWidth() * effectScale;
+        Shape outline = outlineWidth > 0
+                ? new BasicStroke(outlineWidth * 2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND).createStrokedShape(text)
+                : null;
+        Shape[] solid = outline != null ? new Shape[]{outline, text} : new Shape[]{text};
+        if (outline != null) {
+            body.add(outline.getBounds2D());
+        }
+
+        Rectangle2D content = (Rectangle2D) body.clone();
+        int glowRadius = scaleEffect(settings.getGlowRadius(), effectScale);
+        if (glowRadius > 0) {
+            content.add(grow(body, AlphaMask.extent(glowRadius), 0));
+        }
+        boolean shadow = settings.isEnableShadow();
+        int shadowBlur = shadow ? scaleEffect(settings.getShadowBlur(), effectScale) : 0;
+        int shadowOffset = Math.max(1, Math.round(SHADOW_OFFSET * effectScale)) + shadowBlur / 2;
+        if (shadow) {
+            content.add(grow(body, AlphaMask.extent(shadowBlur), shadowOffset));
+        }
+
+        return render(content, settings.getRotation(), (g2d, canvas) -> {
+            if (glowRadius > 0) {
+                paintBlurred(g2d, canvas, solid, 0, glowRadius, settings.getGlowColor(), GLOW_GAIN);
+            }
+            if (shadow && shadowBlur > 0) {
+                paintBlurred(g2d, canvas, solid, shadowOffset, shadowBlur, settings.getShadowColor(), 1f);
+            } else if (shadow) {
+                g2d.setColor(settings.getShadowColor());
+                g2d.translate(shadowOffset, shadowOffset);
+                for (Shape shape : solid) {
+                    g2d.fill(shape);
+                }
+                g2d.translate(-shadowOffset, -shadowOffset);
+            }
+            if (outline != null) {
+                g2d.setColor(settings.getOutlineColor());
+                g2d.fill(outline);
+            }
+            g2d.setColor(settings.getTextColor());
+            g2d.fill(text);
+            AlphaMask.applyOpacity(canvas, settings.getTextOpacity());
+        });
+    }
+
+    /**
+     * 渲染形状的遮罩，模糊、着色后画到图章上
+     * 遮罩与图章像素对齐，旋转已包含在当前变换中
+     * @param offset 形状在文字坐标系中的偏移
+     */
+    private static void paintBlurred(Graphics2D g2d, BufferedImage canvas, Shape[] shapes, int offset,
+                                     int radius, Color color, float gain) {
+        AffineTransform transform = g2d.getTransform();
+        AffineTransform shifted = new AffineTransform(transform);
+        shifted.translate(offset, offset);
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        int[] alpha = AlphaMask.render(width, height, shifted, shapes);
+        AlphaMask.blur(alpha, width, height, radius);
+        g2d.setTransform(new AffineTransform());
+        g2d.drawImage(AlphaMask.colorize(alpha, width, height, color, gain), 0, 0, null);
+        g2d.setTransform(transform);
+    }
+
+    /**
+     * 按比例缩放效果尺寸，设置了效果时至少保留1像素
+     */
+    private static int scaleEffect(int value, float scale) {
+        return value > 0 ? Math.max(1, Math.round(value * scale)) : 0;
+    }
+
+    private static Rectangle2D grow(Rectangle2D rect, int margin, int offset) {
+        return new Rectangle2D.Double(rect.getX() + offset - margin, rect.getY() + offset - margin,
+                rect.getWidth() + margin * 2, rect.getHeight() + margin * 2);
+    }
+
+    /**
+     * 渲染图片水印图章
+     * @param logo 水印图片
+     * @param width 缩放后宽度
+     * @param height 缩放后高度
+     * @param opacity 透明度
+     * @param rotation 旋转角度
+     * @return 图片图章，旋转中心为水印图片中心
+     */
+    public static WatermarkStamp renderImage(BufferedImage logo, int width, int height, float opacity, int rotation) {
+        int left = -(width / 2);
+        int top = -(height / 2);
+        Rectangle2D content = new Rectangle2D.Double(left, top, width, height);
+        return render(content, rotation, (g2d, canvas) -> {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+            g2d.drawImage(logo, left, top, width, height, null);
+        });
+    }
+
+    /**
+     * 按旋转后的包围盒创建图章位图并绘制内容
+     * @param content 内容区域（相对于旋转中心）
+     * @param rotation 旋转角度
+     * @param painter 在旋转中心坐标系下绘制内容，同时传入图章位图
+     * @return 图章
+     */
+    private static WatermarkStamp render(Rectangle2D content, int rotation,
+                                         BiConsumer<Graphics2D, BufferedImage> painter) {
+        // 留出1像素给抗锯齿边缘
+        content = new Rectangle2D.Double(content.getX() - 1, content.getY() - 1,
+                content.getWidth() + 2, content.getHeight() + 2);
+        AffineTransform rotate = AffineTransform.getRotateInstance(Math.toRadians(rotation));
+        Rectangle bounds = rotate.createTransformedShape(content).getBounds();
+
+        BufferedImage image = new BufferedImage(
+                Math.max(1, bounds.width), Math.max(1, bounds.height), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.translate(-bounds.x, -bounds.y);
+        g2d.transform(rotate);
+        painter.accept(g2d, image);
+        g2d.dispose();
+
+        return new WatermarkStamp(image, bounds.x, bounds.y);
+    }
+}